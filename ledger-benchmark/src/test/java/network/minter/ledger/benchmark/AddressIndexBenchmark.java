@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import network.minter.ledger.connector.AddressIndex;
+
+/**
+ * Reverse lookup in {@link AddressIndex}: known addresses and misses, which must be rejected by bloom filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressIndexBenchmark {
+    private static final int PROBES = 1024;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private AddressIndex mIndex;
+    private byte[][] mKnown;
+    private byte[][] mUnknown;
+    private int mPos = 0;
+
+    private static byte[] randomAddress(Random random) {
+        byte[] out = new byte[20];
+        random.nextBytes(out);
+        return out;
+    }
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mIndex = new AddressIndex(size);
+        mKnown = new byte[PROBES][];
+        for (int i = 0; i < size; i++) {
+            byte[] address = randomAddress(random);
+            mIndex.put(address, i);
+            if (i < PROBES) {
+                mKnown[i] = address;
+            }
+        }
+        mUnknown = new byte[PROBES][];
+        for (int i = 0; i < PROBES; i++) {
+            mUnknown[i] = randomAddress(random);
+        }
+    }
+
+    @Benchmark
+    public int hit() {
+        mPos = (mPos + 1) & (PROBES - 1);
+        return mIndex.indexOf(mKnown[mPos % size]);
+    }
+
+    @Benchmark
+    public int miss() {
+        mPos = (mPos + 1) & (PROBES - 1);
+        return mIndex.indexOf(mUnknown[mPos]);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import androidx.core.util.Pair;
+import network.minter.blockchain.models.operational.SignatureSingleData;
+import network.minter.core.crypto.BytesData;
+import network.minter.core.crypto.MinterAddress;
+import network.minter.ledger.connector.MinterLedger;
+import network.minter.ledger.connector.emulator.MinterAppEmulator;
+import network.minter.ledger.connector.exceptions.ResponseException;
+
+/**
+ * Whole exchange over zero latency {@link MinterAppEmulator}: framing, transport, reassembly and result parsing.
+ * Emulator crypto (key derivation is cached, signing is not) is included in numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExchangeBenchmark {
+    private static final int BATCH = 16;
+    private MinterLedger mLedger;
+    private BytesData mHash;
+    private List<MinterLedger.SignRequest> mSignRequests;
+
+    @Setup
+    public void setUp() throws ResponseException {
+        MinterAppEmulator emulator = new MinterAppEmulator.Builder()
+                .setSeed(new byte[64])
+                .build();
+        mLedger = new MinterLedger(emulator);
+        mHash = new BytesData(new byte[32]);
+        mSignRequests = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            mSignRequests.add(new MinterLedger.SignRequest(0, mHash));
+        }
+        // derive keys before measurement
+        mLedger.getAddresses(0, BATCH, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mLedger.destroy();
+    }
+
+    @Benchmark
+    public Pair<MinterLedger.Status, String> getVersion() throws ResponseException {
+        return mLedger.getVersion();
+    }
+
+    @Benchmark
+    public Pair<MinterLedger.Status, MinterAddress> getAddress() throws ResponseException {
+        return mLedger.getAddress(0, true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public MinterAddress[] getAddressesBatch() throws ResponseException {
+        return mLedger.getAddresses(0, BATCH, true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public MinterAddress[] getAddressesLoop() throws ResponseException {
+        MinterAddress[] out = new MinterAddress[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            out[i] = mLedger.getAddress(i, true).second;
+        }
+        return out;
+    }
+
+    @Benchmark
+    public Pair<MinterLedger.Status, SignatureSingleData> signTxHash() throws ResponseException {
+        return mLedger.signTxHash(mHash);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<SignatureSingleData> signTxHashes() throws ResponseException {
+        return mLedger.signTxHashes(mSignRequests, null);
+    }
+}
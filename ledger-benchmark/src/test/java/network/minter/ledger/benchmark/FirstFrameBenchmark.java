@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import androidx.core.util.Pair;
+import network.minter.ledger.connector.LedgerTransport;
+import network.minter.ledger.connector.MinterLedger;
+import network.minter.ledger.connector.emulator.MinterAppEmulator;
+import network.minter.ledger.connector.exceptions.ResponseException;
+
+/**
+ * Time to first frame of single-frame GetVersion exchange, event-driven read path against the legacy
+ * sleep-poll loop, that waited for frame up to read timeout and then slept as long before the next try.
+ * Emulator wakes up reader as soon as frame is queued, as UsbRequest does. Legacy constants (1000ms)
+ * are scaled down to {@link #pollMs}, so answers slower than one poll show the same effect in less time.
+ * Sample mode reports p0.50 and p0.99 of every combination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FirstFrameBenchmark {
+    @Param({"event", "sleepPoll"})
+    public String readPath;
+
+    /**
+     * Device answer time. Short one is caught by first poll, longer ones are not
+     */
+    @Param({"5", "30", "70"})
+    public long latencyMs;
+
+    /**
+     * Scaled legacy read timeout and sleep between reads
+     */
+    @Param({"20"})
+    public long pollMs;
+
+    private MinterLedger mLedger;
+
+    @Setup
+    public void setUp() {
+        final MinterAppEmulator emulator = new MinterAppEmulator.Builder()
+                .setSeed(new byte[64])
+                .setLatency(latencyMs, TimeUnit.MILLISECONDS)
+                .build();
+        mLedger = new MinterLedger("sleepPoll".equals(readPath) ? new SleepPollTransport(emulator, pollMs) : emulator);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mLedger.destroy();
+    }
+
+    @Benchmark
+    public Pair<MinterLedger.Status, String> getVersion() throws ResponseException {
+        return mLedger.getVersion();
+    }
+
+    /**
+     * Legacy LedgerIO.readWait loop: bulkTransfer for up to read timeout, then sleep before next attempt
+     */
+    private final static class SleepPollTransport implements LedgerTransport {
+        private final LedgerTransport mTransport;
+        private final long mPollMs;
+
+        SleepPollTransport(LedgerTransport transport, long pollMs) {
+            mTransport = transport;
+            mPollMs = pollMs;
+        }
+
+        @Override
+        public int getPacketSize() {
+            return mTransport.getPacketSize();
+        }
+
+        @Override
+        public int read(byte[] out, int length, long timeoutMs) throws IOException {
+            final int bytesRead = mTransport.read(out, length, Math.min(timeoutMs, mPollMs));
+            if (bytesRead <= 0 && timeoutMs > 0) {
+                try {
+                    Thread.sleep(mPollMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public int write(byte[] data, int offset, int length, long timeoutMs) throws IOException {
+            return mTransport.write(data, offset, length, timeoutMs);
+        }
+
+        @Override
+        public void cancelRead() {
+            mTransport.cancelRead();
+        }
+
+        @Override
+        public void close() {
+            mTransport.close();
+        }
+    }
+}
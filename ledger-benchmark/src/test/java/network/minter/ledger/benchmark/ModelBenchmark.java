@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import network.minter.blockchain.models.operational.SignatureSingleData;
+import network.minter.core.crypto.BytesData;
+import network.minter.core.crypto.MinterAddress;
+
+/**
+ * Result models built from response data, the same way MinterLedger does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+    private BytesData mSignatureData;
+    private BytesData mAddressData;
+    private byte[] mAddressBytes;
+
+    @Setup
+    public void setUp() {
+        byte[] sig = new byte[65];
+        for (int i = 0; i < sig.length; i++) {
+            sig[i] = (byte) i;
+        }
+        sig[64] = 27;
+        mSignatureData = new BytesData(sig);
+        mAddressBytes = new byte[20];
+        for (int i = 0; i < mAddressBytes.length; i++) {
+            mAddressBytes[i] = (byte) (0xA0 + i);
+        }
+        mAddressData = new BytesData(mAddressBytes);
+    }
+
+    @Benchmark
+    public SignatureSingleData signature() {
+        return new SignatureSingleData(
+                mSignatureData.takeRange(0, 32),
+                mSignatureData.takeRange(32, 64),
+                mSignatureData.takeLast(1)
+        );
+    }
+
+    @Benchmark
+    public MinterAddress addressFromBytesData() {
+        return new MinterAddress(mAddressData.getData());
+    }
+
+    @Benchmark
+    public MinterAddress addressFromArray() {
+        return new MinterAddress(mAddressBytes);
+    }
+}
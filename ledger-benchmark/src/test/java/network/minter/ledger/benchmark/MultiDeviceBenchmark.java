@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import network.minter.core.crypto.BytesData;
+import network.minter.ledger.connector.MinterLedger;
+import network.minter.ledger.connector.emulator.MinterAppEmulator;
+
+/**
+ * Throughput of independent devices driven in parallel, each with 1ms wire latency.
+ * Time should stay flat as device count grows, as handles share no locks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class MultiDeviceBenchmark {
+    private static final int SIGNS_PER_DEVICE = 8;
+
+    @Param({"1", "2", "4"})
+    public int devices;
+
+    private final List<MinterLedger> mLedgers = new ArrayList<>();
+    private ExecutorService mExecutor;
+    private BytesData mHash;
+
+    @Setup
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(devices);
+        mHash = new BytesData(new byte[32]);
+        for (int i = 0; i < devices; i++) {
+            byte[] seed = new byte[64];
+            seed[0] = (byte) i;
+            MinterAppEmulator emulator = new MinterAppEmulator.Builder()
+                    .setSeed(seed)
+                    .setLatency(1, TimeUnit.MILLISECONDS)
+                    .build();
+            mLedgers.add(new MinterLedger(emulator));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        for (MinterLedger ledger : mLedgers) {
+            ledger.destroy();
+        }
+        mLedgers.clear();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNS_PER_DEVICE)
+    public int signParallel() throws Exception {
+        final List<Future<Integer>> results = new ArrayList<>(devices);
+        for (final MinterLedger ledger : mLedgers) {
+            results.add(mExecutor.submit(() -> {
+                for (int i = 0; i < SIGNS_PER_DEVICE; i++) {
+                    ledger.signTxHash(mHash);
+                }
+                return SIGNS_PER_DEVICE;
+            }));
+        }
+
+        int total = 0;
+        for (Future<Integer> f : results) {
+            total += f.get();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import network.minter.core.crypto.BytesData;
+import network.minter.ledger.connector.HidFrameDecoder;
+import network.minter.ledger.connector.HidFrameEncoder;
+import network.minter.ledger.connector.MinterLedger;
+
+/**
+ * Response reassembly: {@link HidFrameDecoder} versus the BytesData based code MinterLedger.exchange used before it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReassemblyBenchmark {
+    // 3 - version, 20 - address, 65 - signature; legacy code can't read more than 3 frames
+    @Param({"3", "20", "65", "150"})
+    public int dataSize;
+
+    private byte[][] mFrames;
+    private HidFrameDecoder mDecoder;
+
+    static byte[][] buildResponse(int dataSize) {
+        final int len = dataSize + 2;
+        final byte[] body = new byte[len + 2];
+        body[0] = (byte) (len >> 8);
+        body[1] = (byte) len;
+        for (int i = 0; i < dataSize; i++) {
+            body[2 + i] = (byte) i;
+        }
+        body[body.length - 2] = (byte) 0x90;
+
+        final int count = (body.length + HidFrameEncoder.FRAME_PAYLOAD_SIZE - 1) / HidFrameEncoder.FRAME_PAYLOAD_SIZE;
+        final byte[][] frames = new byte[count][HidFrameEncoder.FRAME_SIZE];
+        for (int seq = 0; seq < count; seq++) {
+            frames[seq][0] = 0x01;
+            frames[seq][1] = 0x01;
+            frames[seq][2] = HidFrameEncoder.TAG_APDU;
+            frames[seq][3] = (byte) (seq >> 8);
+            frames[seq][4] = (byte) seq;
+            int off = seq * HidFrameEncoder.FRAME_PAYLOAD_SIZE;
+            System.arraycopy(body, off, frames[seq], HidFrameEncoder.FRAME_HEADER_SIZE,
+                    Math.min(HidFrameEncoder.FRAME_PAYLOAD_SIZE, body.length - off));
+        }
+        return frames;
+    }
+
+    @Setup
+    public void setUp() {
+        mFrames = buildResponse(dataSize);
+        mDecoder = new HidFrameDecoder();
+    }
+
+    @Benchmark
+    public MinterLedger.ExchangeResult decoder() throws IOException {
+        mDecoder.reset();
+        int i = 0;
+        while (!mDecoder.feed(mFrames[i], mFrames[i].length)) {
+            i++;
+        }
+
+        MinterLedger.ExchangeResult result = new MinterLedger.ExchangeResult();
+        result.status = MinterLedger.Status.findByValue((short) mDecoder.getStatusCode());
+        result.data = new BytesData(mDecoder.copyData());
+        return result;
+    }
+
+    @Benchmark
+    public MinterLedger.ExchangeResult legacy() throws IOException {
+        BytesData buffer = new BytesData(0xFF);
+
+        short seqn = 0;
+        byte[] buf = new byte[64];
+        System.arraycopy(mFrames[0], 0, buf, 0, buf.length);
+        buffer.write(0, buf);
+
+        short channelId = buffer.toUShortBigInt(0).shortValue();
+        char commandTag = buffer.at(2);
+        short commonDataLen = buffer.toUShortBigInt(5).shortValue();
+        int offset = 0;
+        if (channelId != 0x0101) {
+            throw new IOException(String.format("Unknown channel id %d", channelId));
+        }
+        if (commandTag != 0x05) {
+            throw new IOException("Response has invalid command id");
+        }
+
+        seqn++;
+        while ((seqn * 64) < commonDataLen) {
+            System.arraycopy(mFrames[seqn], 0, buf, 0, buf.length);
+            seqn++;
+            offset += buf.length;
+            buffer.write(offset, buf);
+        }
+
+        BytesData resp = new BytesData(seqn * 64 - (seqn * 5));
+        for (int i = 0; i < seqn; i++) {
+            resp.write(i * 59, buffer.takeRange((i * 64) + 5, 64 + (i * 64)));
+        }
+
+        MinterLedger.ExchangeResult result = new MinterLedger.ExchangeResult();
+        short dataLen = (short) (resp.toUShortBigInt(0).shortValue() + 2);
+        BytesData rawResp = new BytesData(resp.takeRangeTo(dataLen));
+        BytesData statusResp = new BytesData(rawResp.takeRange(dataLen - 2, dataLen));
+        result.status = MinterLedger.Status.findByValue(statusResp.toUShortBigInt(0).shortValue());
+        result.data = new BytesData(rawResp.takeRange(2, dataLen - 2));
+        return result;
+    }
+}
@@ -26,8 +26,9 @@
 
 package network.minter.ledger.connector;
 
-import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
 
+import androidx.annotation.Nullable;
 import network.minter.core.crypto.BytesData;
 
 import static network.minter.core.internal.common.Preconditions.firstNonNull;
@@ -41,7 +42,11 @@ public class APDU {
     public static final int CMD_GET_PUB_KEY = (0x01 << 1);
     public static final int CMD_SIGN_TX = (0x01 << 2);
 
-    public final static int MAX_PAYLOAD_SIZE = Short.MAX_VALUE - 5 - 6 - 2;
+    /**
+     * Lc is single byte, see {@link HidFrameEncoder#MAX_PAYLOAD_SIZE}
+     */
+    public final static int MAX_PAYLOAD_SIZE = HidFrameEncoder.MAX_PAYLOAD_SIZE;
+    private final static HidFrameEncoder sEncoder = new HidFrameEncoder();
 
     private byte mCls = (byte) 0xe0;
     private byte mIns = 0x00;
@@ -64,38 +69,34 @@ public class APDU {
         this(cmd, new BytesData(hexPayload).getBytes());
     }
 
+    /**
+     * Encodes command to HID frames. Allocates new array on each call,
+     * use {@link HidFrameEncoder} to encode into reusable buffer.
+     * @return frames * 64 bytes
+     */
     public byte[] getData() {
-        //5 - control data
-        //2 - length prefix
-        //6 - apdu data (5 bytes control + 2 bytes data size)
-        //N - payload
-        short plSize = (short) mPayload.length;
-        short ledgerFrameSz = (short) (5 + plSize);
-        byte[] out = new byte[64];
-        int off = 0;
-        out[off++] = 0x01; // channel id[0]
-        out[off++] = 0x01; // channel id[1]
-        out[off++] = 0x05; // command tag
-        out[off++] = 0x00; // sequence[0]
-        out[off++] = 0x00; // sequence[1]
-
-        out[off++] = (byte) (ledgerFrameSz >> 8);
-        out[off++] = (byte) (ledgerFrameSz & 0xFF);
-
-        out[off++] = mCls; // dev class
-        out[off++] = mIns; // instruction
-        out[off++] = mP1;  // param1
-        out[off++] = mP2;  // param2
-        out[off++] = (byte) (plSize); // payload size
-
-        for (byte v : mPayload) {
-            out[off++] = v;
-        }
-
-        for (int i = off; off < 64; off++) {
-            out[i] = 0;
-        }
-
+        final byte[] out = new byte[HidFrameEncoder.getFrameCount(this) * HidFrameEncoder.FRAME_SIZE];
+        sEncoder.encode(this, ByteBuffer.wrap(out));
         return out;
     }
+
+    byte getCls() {
+        return mCls;
+    }
+
+    byte getIns() {
+        return mIns;
+    }
+
+    byte getP1() {
+        return mP1;
+    }
+
+    byte getP2() {
+        return mP2;
+    }
+
+    byte[] getPayload() {
+        return mPayload;
+    }
 }
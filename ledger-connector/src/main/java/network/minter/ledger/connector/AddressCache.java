@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+import network.minter.core.crypto.MinterAddress;
+
+/**
+ * Derived address cache: in-memory LRU in front of memory-mapped file of fixed-width 20-byte records,
+ * where record offset is defined by derive index.
+ * Cache is bound to fingerprint (address of index 0), so other seed wipes stored records.
+ */
+public class AddressCache implements Closeable {
+    public final static int RECORD_SIZE = 20;
+    private final static int MAGIC = 0x4d4c4143; // MLAC
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 4 + 4 + RECORD_SIZE;
+    /**
+     * Whole file must fit one mapping
+     */
+    public final static int MAX_PERSISTED_INDEX = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private final File mFile;
+    private final int mMaxIndex;
+    private final Map<Integer, MinterAddress> mMemory;
+    private final byte[] mRecord = new byte[RECORD_SIZE];
+    private RandomAccessFile mRaf;
+    private MappedByteBuffer mMap;
+    private byte[] mFingerprint;
+
+    /**
+     * @param file on-disk storage
+     * @param maxIndex indexes [0, maxIndex) are persisted, others are kept in memory only, up to {@link #MAX_PERSISTED_INDEX}
+     * @param memorySize LRU size
+     */
+    public AddressCache(File file, int maxIndex, final int memorySize) {
+        if (maxIndex < 0 || maxIndex > MAX_PERSISTED_INDEX) {
+            throw new IllegalArgumentException("Max index must be in range [0, " + MAX_PERSISTED_INDEX + "]");
+        }
+        mFile = file;
+        mMaxIndex = maxIndex;
+        mMemory = new LinkedHashMap<Integer, MinterAddress>(Math.min(memorySize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MinterAddress> eldest) {
+                return size() > memorySize;
+            }
+        };
+    }
+
+    /**
+     * Opens storage for given device fingerprint. If storage was written for another fingerprint, it will be cleared.
+     * @param fingerprint 20 bytes, address of derive index 0
+     */
+    public synchronized void bind(byte[] fingerprint) throws IOException {
+        if (fingerprint.length != RECORD_SIZE) {
+            throw new IllegalArgumentException("Fingerprint must have exact 20 bytes");
+        }
+        if (mMap != null && Arrays.equals(mFingerprint, fingerprint)) {
+            return;
+        }
+        mMemory.clear();
+        mFingerprint = fingerprint.clone();
+        open();
+
+        mMap.position(0);
+        final int magic = mMap.getInt();
+        final int version = mMap.getInt();
+        mMap.get(mRecord);
+        if (magic != MAGIC || version != VERSION || !Arrays.equals(mRecord, mFingerprint)) {
+            clear();
+        }
+    }
+
+    public synchronized boolean isBound() {
+        return mMap != null;
+    }
+
+    @Nullable
+    public synchronized MinterAddress get(int deriveIndex) {
+        if (!isBound()) {
+            return null;
+        }
+        MinterAddress address = mMemory.get(deriveIndex);
+        if (address != null || !isPersisted(deriveIndex)) {
+            return address;
+        }
+
+        mMap.position(offset(deriveIndex));
+        mMap.get(mRecord);
+        if (isEmpty(mRecord)) {
+            return null;
+        }
+        address = new MinterAddress(mRecord.clone());
+        mMemory.put(deriveIndex, address);
+        return address;
+    }
+
+    public synchronized void put(int deriveIndex, MinterAddress address) {
+        if (!isBound()) {
+            return;
+        }
+        mMemory.put(deriveIndex, address);
+        if (isPersisted(deriveIndex)) {
+            mMap.position(offset(deriveIndex));
+            mMap.put(address.getData(), 0, RECORD_SIZE);
+        }
+    }
+
+    /**
+     * Drops all records and unbinds cache
+     */
+    public synchronized void invalidate() {
+        if (mMap != null) {
+            clear();
+        }
+        close();
+        mFingerprint = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        mMemory.clear();
+        if (mMap != null) {
+            mMap.force();
+            mMap = null;
+        }
+        if (mRaf != null) {
+            try {
+                mRaf.close();
+            } catch (IOException ignore) {
+            }
+            mRaf = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (mMap != null) {
+            return;
+        }
+        final long size = HEADER_SIZE + (long) mMaxIndex * RECORD_SIZE;
+        mRaf = new RandomAccessFile(mFile, "rw");
+        if (mRaf.length() != size) {
+            mRaf.setLength(size);
+        }
+        mMap = mRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Header goes last: if process dies in between, file keeps previous fingerprint over empty records,
+     * not new fingerprint over records of previous seed
+     */
+    private void clear() {
+        clearRecords();
+        mMap.position(0);
+        mMap.putInt(MAGIC);
+        mMap.putInt(VERSION);
+        mMap.put(mFingerprint != null ? mFingerprint : new byte[RECORD_SIZE]);
+        mMap.force();
+    }
+
+    void clearRecords() {
+        mMemory.clear();
+        mMap.position(HEADER_SIZE);
+        Arrays.fill(mRecord, (byte) 0);
+        while (mMap.hasRemaining()) {
+            mMap.put(mRecord, 0, Math.min(RECORD_SIZE, mMap.remaining()));
+        }
+        mMap.force();
+    }
+
+    private boolean isPersisted(int deriveIndex) {
+        return deriveIndex >= 0 && deriveIndex < mMaxIndex;
+    }
+
+    private static int offset(int deriveIndex) {
+        // maxIndex is limited, so persisted index doesn't overflow
+        return HEADER_SIZE + deriveIndex * RECORD_SIZE;
+    }
+
+    private static boolean isEmpty(byte[] record) {
+        for (byte b : record) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import network.minter.core.crypto.MinterAddress;
+
+/**
+ * Reverse index: address -> derive index.
+ * Open-addressing hash table over flat primitive arrays with Bloom filter in front of it, so misses
+ * usually cost a few bit tests. Addresses are keccak hash outputs, so their bytes are used as hashes directly.
+ */
+public class AddressIndex {
+    public final static int NOT_FOUND = -1;
+    private final static int KEY_SIZE = 20;
+    private final static int MAGIC = 0x4d4c4149; // MLAI
+    private final static int BLOOM_BITS_PER_SLOT = 8;
+    private final static int MIN_CAPACITY = 16;
+
+    private byte[] mKeys;
+    private int[] mValues;
+    private long[] mBloom;
+    private int mMask;
+    private int mBloomMask;
+    private int mSize;
+
+    public AddressIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of entries to allocate space for
+     */
+    public AddressIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public static AddressIndex load(File file) throws IOException {
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException("Invalid address index file");
+            }
+            final int count = is.readInt();
+            final AddressIndex index = new AddressIndex(count);
+            final byte[] key = new byte[KEY_SIZE];
+            for (int i = 0; i < count; i++) {
+                is.readFully(key);
+                index.put(key, is.readInt());
+            }
+            return index;
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        // load factor 0.5
+        int cap = MIN_CAPACITY;
+        while (cap < expectedSize * 2) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24)
+                | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8)
+                | (data[offset + 3] & 0xFF);
+    }
+
+    public synchronized void save(File file) throws IOException {
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            os.writeInt(MAGIC);
+            os.writeInt(mSize);
+            for (int slot = 0; slot < mValues.length; slot++) {
+                if (mValues[slot] != NOT_FOUND) {
+                    os.write(mKeys, slot * KEY_SIZE, KEY_SIZE);
+                    os.writeInt(mValues[slot]);
+                }
+            }
+        }
+    }
+
+    public void put(MinterAddress address, int deriveIndex) {
+        put(address.getData(), deriveIndex);
+    }
+
+    public synchronized void put(byte[] address, int deriveIndex) {
+        checkKey(address);
+        if (deriveIndex < 0) {
+            throw new IllegalArgumentException("Derive index must be positive");
+        }
+        if ((mSize + 1) * 2 > mValues.length) {
+            rehash(mValues.length << 1);
+        }
+        insert(address, deriveIndex);
+    }
+
+    public int indexOf(MinterAddress address) {
+        return indexOf(address.getData());
+    }
+
+    /**
+     * @return derive index or {@link #NOT_FOUND}
+     */
+    public synchronized int indexOf(byte[] address) {
+        checkKey(address);
+        if (!mightContain(address)) {
+            return NOT_FOUND;
+        }
+        int slot = readInt(address, 0) & mMask;
+        while (mValues[slot] != NOT_FOUND) {
+            if (keyEquals(slot, address)) {
+                return mValues[slot];
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return NOT_FOUND;
+    }
+
+    public synchronized boolean contains(MinterAddress address) {
+        return indexOf(address) != NOT_FOUND;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void insert(byte[] address, int deriveIndex) {
+        int slot = readInt(address, 0) & mMask;
+        while (mValues[slot] != NOT_FOUND) {
+            if (keyEquals(slot, address)) {
+                mValues[slot] = deriveIndex;
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        System.arraycopy(address, 0, mKeys, slot * KEY_SIZE, KEY_SIZE);
+        mValues[slot] = deriveIndex;
+        mSize++;
+        addToBloom(address);
+    }
+
+    private boolean keyEquals(int slot, byte[] address) {
+        final int base = slot * KEY_SIZE;
+        for (int i = 0; i < KEY_SIZE; i++) {
+            if (mKeys[base + i] != address[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addToBloom(byte[] address) {
+        for (int off = 4; off < KEY_SIZE; off += 4) {
+            final int bit = readInt(address, off) & mBloomMask;
+            mBloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(byte[] address) {
+        for (int off = 4; off < KEY_SIZE; off += 4) {
+            final int bit = readInt(address, off) & mBloomMask;
+            if ((mBloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        final byte[] keys = mKeys;
+        final int[] values = mValues;
+        allocate(capacity);
+        final byte[] key = new byte[KEY_SIZE];
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != NOT_FOUND) {
+                System.arraycopy(keys, slot * KEY_SIZE, key, 0, KEY_SIZE);
+                insert(key, values[slot]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new byte[capacity * KEY_SIZE];
+        mValues = new int[capacity];
+        Arrays.fill(mValues, NOT_FOUND);
+        mMask = capacity - 1;
+        final int bloomBits = capacity * BLOOM_BITS_PER_SLOT;
+        mBloom = new long[bloomBits >>> 6];
+        mBloomMask = bloomBits - 1;
+        mSize = 0;
+    }
+
+    private void checkKey(byte[] address) {
+        if (address == null || address.length != KEY_SIZE) {
+            throw new IllegalArgumentException("Address must have exact 20 bytes");
+        }
+    }
+}
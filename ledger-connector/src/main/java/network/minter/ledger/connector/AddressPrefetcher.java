@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import network.minter.core.crypto.MinterAddress;
+import timber.log.Timber;
+
+/**
+ * Derives next silent addresses ahead of time. After silent address {@code i} is requested,
+ * indexes {@code i+1 .. i+depth} are derived one by one on a background thread, but only while
+ * there are no user calls to the device. User call that arrives during prefetch waits for at most
+ * one silent exchange, and takes its result if it was deriving the same index. Indexes already
+ * in address cache are skipped. Prefetched addresses are kept in memory until used, moved out of window
+ * or device is disconnected.
+ * @see MinterLedger#setAddressPrefetch(int)
+ */
+public final class AddressPrefetcher {
+    private final MinterLedger mLedger;
+    private final int mDepth;
+    private final ExecutorService mExecutor;
+    // guarded by this
+    private final Map<Integer, MinterAddress> mPrefetched = new HashMap<>();
+    private int mWindowStart = -1;
+    private long mGeneration = 0;
+    private boolean mScheduled = false;
+    private boolean mClosed = false;
+    private CancellationToken mToken;
+    private int mFetchingIndex = -1;
+    private int mAwaitedIndex = -1;
+    private MinterAddress mHandoff;
+
+    private final AtomicLong mHits = new AtomicLong(0);
+    private final AtomicLong mMisses = new AtomicLong(0);
+    private final AtomicLong mPrefetches = new AtomicLong(0);
+    private final AtomicLong mWasted = new AtomicLong(0);
+
+    AddressPrefetcher(MinterLedger ledger, int depth) {
+        mLedger = ledger;
+        mDepth = depth;
+        mExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "minter-ledger-prefetch");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Takes prefetched address and moves prefetch window after it. Front-ends, that derive addresses
+     * on their own, should call this before going to device.
+     * @return address or null, if it has not been prefetched (miss)
+     */
+    @Nullable
+    public MinterAddress lookup(int deriveIndex) {
+        return lookup(deriveIndex, false, null);
+    }
+
+    /**
+     * Same as {@link #lookup(int)}, but if the index is being derived right now, waits for it.
+     * Must not be called by device owner: prefetch waits for the device
+     * @param token cancels waiting, then null is returned
+     */
+    @Nullable
+    public MinterAddress lookup(int deriveIndex, @Nullable CancellationToken token) {
+        return lookup(deriveIndex, true, token);
+    }
+
+    private MinterAddress lookup(int deriveIndex, boolean await, @Nullable CancellationToken token) {
+        MinterAddress address;
+        synchronized (this) {
+            address = mPrefetched.remove(deriveIndex);
+            if (address == null && await && deriveIndex == mFetchingIndex) {
+                address = awaitFetching(deriveIndex, token);
+            }
+            moveWindow(deriveIndex + 1);
+            schedule();
+        }
+        if (address != null) {
+            mHits.incrementAndGet();
+        } else {
+            mMisses.incrementAndGet();
+        }
+        return address;
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return addresses derived in background
+     */
+    public long getPrefetchCount() {
+        return mPrefetches.get();
+    }
+
+    /**
+     * @return prefetched addresses dropped without use
+     */
+    public long getWastedCount() {
+        return mWasted.get();
+    }
+
+    public double getHitRate() {
+        final long hits = mHits.get();
+        final long total = hits + mMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void resetStats() {
+        mHits.set(0);
+        mMisses.set(0);
+        mPrefetches.set(0);
+        mWasted.set(0);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "AddressPrefetcher{depth=%d, hits=%d, misses=%d, prefetched=%d, wasted=%d}",
+                mDepth, getHitCount(), getMissCount(), getPrefetchCount(), getWastedCount());
+    }
+
+    /**
+     * Device became idle, continue prefetching
+     */
+    void onIdle() {
+        synchronized (this) {
+            schedule();
+        }
+    }
+
+    /**
+     * Drops prefetched addresses, they may belong to another device
+     */
+    synchronized void clear() {
+        mWasted.addAndGet(mPrefetched.size());
+        mPrefetched.clear();
+        mWindowStart = -1;
+        mGeneration++;
+        if (mToken != null) {
+            mToken.cancel();
+        }
+        notifyAll();
+    }
+
+    void close() {
+        synchronized (this) {
+            mClosed = true;
+            clear();
+        }
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Must be called under lock, which is released while waiting
+     */
+    private MinterAddress awaitFetching(int deriveIndex, @Nullable CancellationToken token) {
+        final Runnable onCancel = this::wakeUp;
+        mAwaitedIndex = deriveIndex;
+        mHandoff = null;
+        if (token != null) {
+            token.setOnCancel(onCancel);
+        }
+        try {
+            while (mFetchingIndex == deriveIndex && !mClosed && (token == null || !token.isCanceled())) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (token != null) {
+                token.removeOnCancel(onCancel);
+            }
+        }
+        final MinterAddress out = mHandoff;
+        mHandoff = null;
+        mAwaitedIndex = -1;
+        return out;
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    private void moveWindow(int start) {
+        if (start == mWindowStart) {
+            return;
+        }
+        mWindowStart = start;
+        final Iterator<Map.Entry<Integer, MinterAddress>> it = mPrefetched.entrySet().iterator();
+        while (it.hasNext()) {
+            final int index = it.next().getKey();
+            if (index < start || index >= start + mDepth) {
+                it.remove();
+                mWasted.incrementAndGet();
+            }
+        }
+    }
+
+    private int nextMissing() {
+        if (mWindowStart < 0) {
+            return -1;
+        }
+        for (int i = mWindowStart; i < mWindowStart + mDepth && i >= 0; i++) {
+            if (!mPrefetched.containsKey(i) && !mLedger.isAddressCached(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void schedule() {
+        if (mScheduled || mClosed || nextMissing() < 0 || !mLedger.isIdle()) {
+            return;
+        }
+        mScheduled = true;
+        try {
+            mExecutor.execute(this::prefetch);
+        } catch (RejectedExecutionException e) {
+            mScheduled = false;
+        }
+    }
+
+    private void prefetch() {
+        while (true) {
+            final int index;
+            final long generation;
+            final CancellationToken token;
+            synchronized (this) {
+                index = nextMissing();
+                if (index < 0 || mClosed || !mLedger.isIdle()) {
+                    // rescheduled by next lookup or when device becomes idle
+                    mScheduled = false;
+                    return;
+                }
+                generation = mGeneration;
+                token = mToken = new CancellationToken();
+                mFetchingIndex = index;
+            }
+
+            MinterAddress address = null;
+            try {
+                address = mLedger.prefetchAddress(index, token);
+            } catch (IOException e) {
+                Timber.d("Address prefetch stopped: %s", e.getMessage());
+            }
+
+            synchronized (this) {
+                mToken = null;
+                mFetchingIndex = -1;
+                notifyAll();
+                if (address == null) {
+                    mScheduled = false;
+                    return;
+                }
+                mPrefetches.incrementAndGet();
+                if (generation == mGeneration && index == mAwaitedIndex) {
+                    // user call waits for this index
+                    mHandoff = address;
+                } else if (generation == mGeneration && index >= mWindowStart && index < mWindowStart + mDepth) {
+                    mPrefetched.put(index, address);
+                } else {
+                    mWasted.incrementAndGet();
+                }
+            }
+        }
+    }
+}
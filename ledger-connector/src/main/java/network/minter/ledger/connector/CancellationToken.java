@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import network.minter.ledger.connector.exceptions.CanceledException;
+
+/**
+ * Cancels blocking device call from another thread. Canceled call unwinds with
+ * {@link CanceledException} (wrapped to ResponseException with {@link MinterLedger.Status#Canceled})
+ * as soon as transport wakes up. One token per call: once canceled, it stays canceled.
+ * Token may also carry call deadline, it limits waiting for device and response together.
+ */
+public final class CancellationToken {
+    private final long mDeadlineNanos;
+    private volatile boolean mCanceled = false;
+    private final AtomicReference<Runnable> mOnCancel = new AtomicReference<>();
+
+    public CancellationToken() {
+        mDeadlineNanos = Long.MAX_VALUE;
+    }
+
+    private CancellationToken(long deadlineNanos) {
+        mDeadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return token, that fails call with ReadTimeoutException after timeout, counting from now
+     */
+    public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+        return new CancellationToken(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * @return {@link System#nanoTime()} based deadline, or Long.MAX_VALUE if there is none
+     */
+    public long getDeadlineNanos() {
+        return mDeadlineNanos;
+    }
+
+    public void cancel() {
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+        }
+        runOnCancel();
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    public void throwIfCanceled() throws CanceledException {
+        if (mCanceled) {
+            throw new CanceledException();
+        }
+    }
+
+    /**
+     * @param onCancel called once on cancel, or right away if token is already canceled
+     */
+    void setOnCancel(Runnable onCancel) {
+        mOnCancel.set(onCancel);
+        if (mCanceled) {
+            runOnCancel();
+        }
+    }
+
+    /**
+     * @param onCancel same instance that has been passed to {@link #setOnCancel(Runnable)}
+     * @return false if callback has been replaced, or cancel has already taken it to run
+     */
+    boolean removeOnCancel(Runnable onCancel) {
+        return mOnCancel.compareAndSet(onCancel, null);
+    }
+
+    private void runOnCancel() {
+        // whoever takes callback first runs it, removed callback is never run
+        final Runnable onCancel = mOnCancel.getAndSet(null);
+        if (onCancel != null) {
+            onCancel.run();
+        }
+    }
+}
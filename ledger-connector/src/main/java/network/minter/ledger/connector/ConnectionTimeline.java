@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Timestamps of connection setup stages, from first {@link LedgerNanoS#search()} to first device response.
+ * Each stage is marked once per connection, repeated search polls don't move marks.
+ * Timeline is restarted on disconnect.
+ */
+public final class ConnectionTimeline {
+    private final static Stage[] STAGES = Stage.values();
+    private final AtomicLongArray mMarks = new AtomicLongArray(STAGES.length);
+
+    public enum Stage {
+        /**
+         * First search after handle creation or disconnect
+         */
+        Search,
+        DeviceFound,
+        /**
+         * Permission dialog shown. Not reached if permission was granted before
+         */
+        PermissionRequested,
+        PermissionGranted,
+        DeviceOpened,
+        InterfaceClaimed,
+        /**
+         * IO initialized, device is usable
+         */
+        Ready,
+        /**
+         * First complete response to any command
+         */
+        FirstResponse,
+    }
+
+    public interface Listener {
+        /**
+         * Called once per connection, right after device became ready
+         */
+        void onConnectionReady(ConnectionTimeline timeline);
+    }
+
+    /**
+     * Marks stage with current time, if it was not marked yet
+     * @return true if stage has been marked by this call
+     */
+    boolean mark(Stage stage) {
+        return mMarks.get(stage.ordinal()) == 0 && mMarks.compareAndSet(stage.ordinal(), 0, System.nanoTime());
+    }
+
+    void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            mMarks.set(i, 0);
+        }
+    }
+
+    public boolean isReached(Stage stage) {
+        return mMarks.get(stage.ordinal()) != 0;
+    }
+
+    private long getStart() {
+        long start = 0;
+        for (int i = 0; i < STAGES.length; i++) {
+            final long mark = mMarks.get(i);
+            if (mark != 0 && (start == 0 || mark < start)) {
+                start = mark;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * @return nanoseconds from the first marked stage, -1 if stage was not reached
+     */
+    public long getElapsed(Stage stage) {
+        final long mark = mMarks.get(stage.ordinal());
+        return mark == 0 ? -1 : mark - getStart();
+    }
+
+    /**
+     * @return nanoseconds between stages, -1 if any of them was not reached
+     */
+    public long getDuration(Stage from, Stage to) {
+        final long start = mMarks.get(from.ordinal());
+        final long end = mMarks.get(to.ordinal());
+        return start == 0 || end == 0 ? -1 : end - start;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Stage stage : STAGES) {
+            final long elapsed = getElapsed(stage);
+            if (elapsed < 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format(Locale.US, "%s +%.1fms", stage.name(), elapsed / 1e6));
+        }
+        return sb.toString();
+    }
+}
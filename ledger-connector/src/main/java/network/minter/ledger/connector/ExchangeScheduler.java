@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import network.minter.ledger.connector.exceptions.CanceledException;
+import network.minter.ledger.connector.exceptions.DeviceBusyException;
+import network.minter.ledger.connector.exceptions.ReadTimeoutException;
+
+/**
+ * Grants device to one caller at a time. Waiting callers are queued by {@link Priority}, FIFO inside
+ * each class. Higher class goes first, but lower class waiter, skipped {@link #STARVATION_LIMIT} times,
+ * gets device next. Each class queue is bounded, overflow is handled by {@link RejectionPolicy}.
+ * Permit is reentrant: device call made by the owner thread, for example from progress listener, does not wait.
+ */
+public final class ExchangeScheduler {
+    public final static int STARVATION_LIMIT = 8;
+    private final static Priority[] PRIORITIES = Priority.values();
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Waiter>[] mQueues = new ArrayDeque[PRIORITIES.length];
+    private final int[] mCapacity = new int[PRIORITIES.length];
+    private final RejectionPolicy[] mPolicy = new RejectionPolicy[PRIORITIES.length];
+    private final LatencyHistogram[] mWaitTime = new LatencyHistogram[PRIORITIES.length];
+    private final AtomicLongArray mGranted = new AtomicLongArray(PRIORITIES.length);
+    private final AtomicLongArray mRejected = new AtomicLongArray(PRIORITIES.length);
+    // guarded by this
+    private Thread mOwner;
+    private int mHolds;
+
+    public enum Priority {
+        /**
+         * User is looking at device: signing, showing address on screen
+         */
+        Interactive,
+        Normal,
+        /**
+         * Scans and prefetch, may wait
+         */
+        Background,
+    }
+
+    public enum RejectionPolicy {
+        /**
+         * New request fails with {@link DeviceBusyException}
+         */
+        RejectNew,
+        /**
+         * Oldest waiting request of the same class fails with {@link DeviceBusyException}, new one is queued
+         */
+        DropOldest,
+    }
+
+    private final static class Waiter {
+        final Thread thread = Thread.currentThread();
+        final Priority priority;
+        final long enqueuedAt = System.nanoTime();
+        int skips = 0;
+        boolean granted = false;
+        boolean dropped = false;
+
+        Waiter(Priority priority) {
+            this.priority = priority;
+        }
+    }
+
+    public ExchangeScheduler() {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            mQueues[i] = new ArrayDeque<>();
+            mWaitTime[i] = new LatencyHistogram();
+        }
+        setQueueCapacity(Priority.Interactive, 8, RejectionPolicy.RejectNew);
+        setQueueCapacity(Priority.Normal, 32, RejectionPolicy.RejectNew);
+        setQueueCapacity(Priority.Background, 16, RejectionPolicy.DropOldest);
+    }
+
+    /**
+     * Signing and on-screen address are interactive, other commands are normal
+     */
+    public static Priority defaultPriority(MinterLedger.Command command) {
+        return command == MinterLedger.Command.SignHash || command == MinterLedger.Command.GetAddress
+                ? Priority.Interactive
+                : Priority.Normal;
+    }
+
+    /**
+     * @param capacity max waiting requests of this class, not counting running one
+     */
+    public synchronized void setQueueCapacity(@NonNull Priority priority, int capacity, @NonNull RejectionPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        mCapacity[priority.ordinal()] = capacity;
+        mPolicy[priority.ordinal()] = policy;
+    }
+
+    public synchronized int getQueueDepth(@NonNull Priority priority) {
+        return mQueues[priority.ordinal()].size();
+    }
+
+    public synchronized int getQueueDepth() {
+        int out = 0;
+        for (ArrayDeque<Waiter> queue : mQueues) {
+            out += queue.size();
+        }
+        return out;
+    }
+
+    /**
+     * @return time from request to device grant, nanoseconds. Uncontended grants are recorded as 0
+     */
+    public LatencyHistogram getWaitTime(@NonNull Priority priority) {
+        return mWaitTime[priority.ordinal()];
+    }
+
+    public long getGrantedCount(@NonNull Priority priority) {
+        return mGranted.get(priority.ordinal());
+    }
+
+    /**
+     * @return requests rejected or dropped from queue
+     */
+    public long getRejectedCount(@NonNull Priority priority) {
+        return mRejected.get(priority.ordinal());
+    }
+
+    public void resetStats() {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            mWaitTime[i].reset();
+            mGranted.set(i, 0);
+            mRejected.set(i, 0);
+        }
+    }
+
+    /**
+     * @return true if device is held by calling thread, so any device call from it does not wait
+     */
+    public synchronized boolean isHeldByCurrentThread() {
+        return mOwner == Thread.currentThread();
+    }
+
+    /**
+     * @return true if anyone of higher class is waiting. Long batches check it to give device away
+     */
+    public synchronized boolean hasWaitersAbove(@NonNull Priority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (!mQueues[i].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ExchangeScheduler{");
+        for (Priority p : PRIORITIES) {
+            final LatencyHistogram wait = getWaitTime(p);
+            sb.append(String.format(Locale.US, "%s: depth=%d, granted=%d, rejected=%d, p50=%.2fms, p99=%.2fms; ",
+                    p.name(), getQueueDepth(p), getGrantedCount(p), getRejectedCount(p),
+                    wait.getValueAtPercentile(50) / 1_000_000d, wait.getValueAtPercentile(99) / 1_000_000d));
+        }
+        sb.setLength(sb.length() - 2);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Waits for device. Every successful call must be paired with {@link #release()}
+     * @param token cancels waiting, its deadline limits waiting time
+     * @throws DeviceBusyException if queue of this class is full
+     * @throws CanceledException if token is canceled or thread is interrupted while waiting
+     * @throws ReadTimeoutException if token deadline is reached while waiting
+     */
+    void acquire(@NonNull Priority priority, @Nullable CancellationToken token) throws IOException {
+        final int p = priority.ordinal();
+        final Waiter waiter;
+        synchronized (this) {
+            if (mOwner == Thread.currentThread()) {
+                mHolds++;
+                return;
+            }
+            if (token != null) {
+                token.throwIfCanceled();
+            }
+            if (mOwner == null && getQueueDepth() == 0) {
+                grant(Thread.currentThread(), p, 0);
+                return;
+            }
+
+            final ArrayDeque<Waiter> queue = mQueues[p];
+            if (queue.size() >= mCapacity[p]) {
+                mRejected.incrementAndGet(p);
+                if (mPolicy[p] == RejectionPolicy.RejectNew) {
+                    throw new DeviceBusyException(String.format("%s queue is full", priority.name()));
+                }
+                queue.poll().dropped = true;
+                notifyAll();
+            }
+            waiter = new Waiter(priority);
+            queue.add(waiter);
+        }
+
+        final Runnable onCancel = this::wakeUp;
+        if (token != null) {
+            token.setOnCancel(onCancel);
+        }
+        try {
+            synchronized (this) {
+                while (!waiter.granted) {
+                    if (waiter.dropped) {
+                        throw new DeviceBusyException(String.format("Dropped from full %s queue", priority.name()));
+                    }
+                    if (token != null && token.isCanceled()) {
+                        mQueues[p].remove(waiter);
+                        throw new CanceledException();
+                    }
+                    final long deadline = token == null ? Long.MAX_VALUE : token.getDeadlineNanos();
+                    final long leftMs = deadline == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (deadline != Long.MAX_VALUE && leftMs <= 0) {
+                        mQueues[p].remove(waiter);
+                        throw new ReadTimeoutException("Deadline exceeded while waiting for device");
+                    }
+                    try {
+                        // 0 is infinite wait
+                        wait(leftMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        if (!waiter.granted) {
+                            mQueues[p].remove(waiter);
+                            throw new CanceledException("Interrupted");
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (token != null) {
+                token.removeOnCancel(onCancel);
+            }
+        }
+    }
+
+    synchronized void release() {
+        if (mOwner != Thread.currentThread()) {
+            throw new IllegalStateException("Device is not held by this thread");
+        }
+        if (--mHolds > 0) {
+            return;
+        }
+        mOwner = null;
+
+        final Waiter next = pollNext();
+        if (next != null) {
+            next.granted = true;
+            grant(next.thread, next.priority.ordinal(), System.nanoTime() - next.enqueuedAt);
+            notifyAll();
+        }
+    }
+
+    private void grant(Thread owner, int priority, long waitNanos) {
+        mOwner = owner;
+        mHolds = 1;
+        mGranted.incrementAndGet(priority);
+        mWaitTime[priority].record(waitNanos);
+    }
+
+    private Waiter pollNext() {
+        // starving waiter first
+        for (int i = PRIORITIES.length - 1; i > 0; i--) {
+            final Waiter head = mQueues[i].peek();
+            if (head != null && head.skips >= STARVATION_LIMIT) {
+                return mQueues[i].poll();
+            }
+        }
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            final Waiter head = mQueues[i].poll();
+            if (head != null) {
+                for (int j = i + 1; j < PRIORITIES.length; j++) {
+                    final Waiter skipped = mQueues[j].peek();
+                    if (skipped != null) {
+                        skipped.skips++;
+                    }
+                }
+                return head;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+}
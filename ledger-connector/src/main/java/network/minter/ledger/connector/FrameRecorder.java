@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Always-on fixed size ring of the last N raw HID frames, for post-mortem diagnostics.
+ * Recording is lock-free and does not allocate: frame bytes are copied into preallocated slots,
+ * each slot is guarded by a sequence stamp, so {@link #snapshot()} skips slots overwritten while being copied.
+ * Stamp accesses around the plain frame fields are fenced: writer marks slot with getAndSet, so frame writes
+ * are not visible before the mark, and reader re-checks stamp with compareAndSet, so frame reads
+ * are not moved after the check.
+ */
+public final class FrameRecorder {
+    public final static int DEFAULT_CAPACITY = 64;
+
+    public enum Direction {
+        In,
+        Out,
+    }
+
+    private final static long STAMP_WRITING = -1;
+
+    private final int mMask;
+    private final byte[] mData;
+    private final int[] mLengths;
+    private final long[] mTimestamps;
+    private final Direction[] mDirections;
+    private final AtomicLongArray mStamps;
+    private final AtomicLong mCursor = new AtomicLong(0);
+
+    public FrameRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity frames to keep, rounded up to power of 2
+     */
+    public FrameRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mData = new byte[size * HidFrameEncoder.FRAME_SIZE];
+        mLengths = new int[size];
+        mTimestamps = new long[size];
+        mDirections = new Direction[size];
+        mStamps = new AtomicLongArray(size);
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @return frames recorded since creation or last {@link #clear()}, including overwritten
+     */
+    public long getRecordedCount() {
+        return mCursor.get();
+    }
+
+    public void record(Direction direction, byte[] data, int offset, int length) {
+        final long seq = mCursor.getAndIncrement();
+        final int slot = (int) (seq & mMask);
+        final int len = Math.min(length, HidFrameEncoder.FRAME_SIZE);
+
+        mStamps.getAndSet(slot, STAMP_WRITING);
+        System.arraycopy(data, offset, mData, slot * HidFrameEncoder.FRAME_SIZE, len);
+        mLengths[slot] = len;
+        mTimestamps[slot] = System.nanoTime();
+        mDirections[slot] = direction;
+        mStamps.set(slot, seq + 1);
+    }
+
+    public void clear() {
+        mCursor.set(0);
+        for (int i = 0; i < mStamps.length(); i++) {
+            mStamps.set(i, 0);
+        }
+    }
+
+    /**
+     * @return recorded frames, oldest first
+     */
+    @NonNull
+    public List<Record> snapshot() {
+        final long end = mCursor.get();
+        final long start = Math.max(0, end - getCapacity());
+        final List<Record> out = new ArrayList<>((int) (end - start));
+
+        for (long seq = start; seq < end; seq++) {
+            final int slot = (int) (seq & mMask);
+            if (mStamps.get(slot) != seq + 1) {
+                continue;
+            }
+            final int len = mLengths[slot];
+            final byte[] data = new byte[len];
+            System.arraycopy(mData, slot * HidFrameEncoder.FRAME_SIZE, data, 0, len);
+            final Record record = new Record(seq, mTimestamps[slot], mDirections[slot], data);
+            // plain get is only an acquire: copies above could still be satisfied after it
+            if (!mStamps.compareAndSet(slot, seq + 1, seq + 1)) {
+                continue;
+            }
+            out.add(record);
+        }
+        return out;
+    }
+
+    /**
+     * @return human readable snapshot, one frame per line, with time relative to the first frame
+     */
+    @NonNull
+    public String dump() {
+        final List<Record> records = snapshot();
+        final StringBuilder sb = new StringBuilder(records.size() * (HidFrameEncoder.FRAME_SIZE * 3 + 32));
+        final long base = records.isEmpty() ? 0 : records.get(0).timestampNanos;
+        for (Record r : records) {
+            sb.append(String.format(Locale.US, "#%d +%.3fms %-3s ", r.sequence, (r.timestampNanos - base) / 1_000_000.0, r.direction.name()));
+            FrameTracer.appendHex(sb, r.data, 0, r.data.length);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    public final static class Record {
+        public final long sequence;
+        public final long timestampNanos;
+        public final Direction direction;
+        public final byte[] data;
+
+        Record(long sequence, long timestampNanos, Direction direction, byte[] data) {
+            this.sequence = sequence;
+            this.timestampNanos = timestampNanos;
+            this.direction = direction;
+            this.data = data;
+        }
+    }
+}
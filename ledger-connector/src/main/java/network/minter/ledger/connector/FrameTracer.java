@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.nio.ByteBuffer;
+
+import timber.log.Timber;
+
+/**
+ * Debug hex dump of HID frames. Disabled by default: call sites must check {@link #isEnabled()}
+ * before tracing, so nothing is formatted or allocated in release builds.
+ * Hex is written by lookup table into a reused builder.
+ */
+public final class FrameTracer {
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder mBuilder = new StringBuilder(HidFrameEncoder.FRAME_SIZE * 3 + 2);
+    private volatile boolean mEnabled = false;
+
+    /**
+     * Frames are logged only if tracing is enabled and at least one Timber tree is planted
+     */
+    public boolean isEnabled() {
+        return mEnabled && Timber.treeCount() > 0;
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public synchronized void traceWrite(ByteBuffer frames) {
+        final int count = frames.limit() / HidFrameEncoder.FRAME_SIZE;
+        for (int i = 0; i < count; i++) {
+            Timber.d("Write frame[%d]: %s", i, dump(frames.array(), i * HidFrameEncoder.FRAME_SIZE, HidFrameEncoder.FRAME_SIZE));
+        }
+    }
+
+    public synchronized void traceRead(int seq, byte[] frame, int length) {
+        Timber.d("Read frame[%d:%d]: %s", seq, length, dump(frame, 0, Math.min(length, frame.length)));
+    }
+
+    public synchronized void traceResponse(byte[] data) {
+        Timber.d("Response[%d]: %s", data.length, dump(data, 0, data.length));
+    }
+
+    static void appendHex(StringBuilder sb, byte[] data, int offset, int length) {
+        sb.append('[');
+        for (int i = offset; i < offset + length; i++) {
+            if (i > offset) {
+                sb.append(' ');
+            }
+            sb.append(HEX[(data[i] >> 4) & 0x0F]);
+            sb.append(HEX[data[i] & 0x0F]);
+        }
+        sb.append(']');
+    }
+
+    private String dump(byte[] data, int offset, int length) {
+        mBuilder.setLength(0);
+        appendHex(mBuilder, data, offset, length);
+        return mBuilder.toString();
+    }
+}
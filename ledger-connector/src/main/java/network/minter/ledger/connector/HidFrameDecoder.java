@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+import static network.minter.ledger.connector.HidFrameEncoder.DEFAULT_CHANNEL;
+import static network.minter.ledger.connector.HidFrameEncoder.FRAME_HEADER_SIZE;
+import static network.minter.ledger.connector.HidFrameEncoder.TAG_APDU;
+
+/**
+ * Incremental response reassembler. Validates channel, tag and sequence index of each frame
+ * and copies frame payload into single buffer, which is reused between responses.
+ * Response layout: [length:2][data:length-2][status:2]
+ */
+public final class HidFrameDecoder {
+    private final static int LENGTH_PREFIX_SIZE = 2;
+    private final static int STATUS_SIZE = 2;
+    private final static int INITIAL_CAPACITY = 256;
+
+    private int mChannel;
+    private byte[] mBuffer = new byte[INITIAL_CAPACITY];
+    private int mExpected = -1;
+    private int mWritten = 0;
+    private int mNextSeq = 0;
+
+    public HidFrameDecoder() {
+        this(DEFAULT_CHANNEL);
+    }
+
+    public HidFrameDecoder(int channel) {
+        mChannel = channel & 0xFFFF;
+    }
+
+    private static int readUShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * @return channel id of raw frame, or -1 if frame is too short
+     */
+    public static int getChannel(byte[] frame, int length) {
+        if (length < FRAME_HEADER_SIZE) {
+            return -1;
+        }
+        return readUShort(frame, 0);
+    }
+
+    public int getChannel() {
+        return mChannel;
+    }
+
+    /**
+     * Resets decoder and makes it accept frames of given channel only
+     */
+    public void reset(int channel) {
+        mChannel = channel & 0xFFFF;
+        reset();
+    }
+
+    public void reset() {
+        mExpected = -1;
+        mWritten = 0;
+        mNextSeq = 0;
+    }
+
+    /**
+     * @param frame raw HID frame
+     * @param length frame length
+     * @return true if response is complete and no more frames required
+     * @throws IOException if frame does not belong to current response
+     */
+    public boolean feed(byte[] frame, int length) throws IOException {
+        if (isComplete()) {
+            throw new IOException("Response is already complete");
+        }
+        if (length < FRAME_HEADER_SIZE) {
+            throw new IOException(String.format("Frame is too short: %d bytes", length));
+        }
+
+        final int channelId = readUShort(frame, 0);
+        if (channelId != mChannel) {
+            throw new IOException(String.format("Unknown channel id %d", channelId));
+        }
+        if (frame[2] != TAG_APDU) {
+            throw new IOException("Response has invalid command id");
+        }
+        final int seq = readUShort(frame, 3);
+        if (seq != mNextSeq) {
+            throw new IOException(String.format("Unexpected sequence index %d, expected %d", seq, mNextSeq));
+        }
+
+        int offset = FRAME_HEADER_SIZE;
+        if (seq == 0) {
+            if (length < FRAME_HEADER_SIZE + LENGTH_PREFIX_SIZE) {
+                throw new IOException("First frame does not contain response length");
+            }
+            mExpected = readUShort(frame, FRAME_HEADER_SIZE);
+            offset += LENGTH_PREFIX_SIZE;
+            if (mBuffer.length < mExpected) {
+                mBuffer = new byte[Math.max(mExpected, mBuffer.length * 2)];
+            }
+        }
+
+        final int chunk = Math.min(length - offset, mExpected - mWritten);
+        System.arraycopy(frame, offset, mBuffer, mWritten, chunk);
+        mWritten += chunk;
+        mNextSeq++;
+
+        return isComplete();
+    }
+
+    public boolean isComplete() {
+        return mExpected >= 0 && mWritten >= mExpected;
+    }
+
+    /**
+     * @return number of accepted frames
+     */
+    public int getFrameCount() {
+        return mNextSeq;
+    }
+
+    /**
+     * @return length of data + status, or -1 if first frame has not been received yet
+     */
+    public int getResponseLength() {
+        return mExpected;
+    }
+
+    public boolean hasStatus() {
+        return isComplete() && mExpected >= STATUS_SIZE;
+    }
+
+    /**
+     * @return status word or -1 if response does not contain it
+     */
+    public int getStatusCode() {
+        if (!hasStatus()) {
+            return -1;
+        }
+        return readUShort(mBuffer, mExpected - STATUS_SIZE);
+    }
+
+    public int getDataLength() {
+        return hasStatus() ? mExpected - STATUS_SIZE : 0;
+    }
+
+    /**
+     * View of response data without status word. Valid until next {@link #reset()}
+     */
+    @NonNull
+    public ByteBuffer getData() {
+        return ByteBuffer.wrap(mBuffer, 0, getDataLength());
+    }
+
+    @NonNull
+    public byte[] copyData() {
+        return Arrays.copyOf(mBuffer, getDataLength());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Splits APDU into sequenced 64-byte HID frames:
+ * [channel:2][tag:1][sequence:2][payload:59]
+ * First frame payload starts with 2-byte APDU length prefix.
+ */
+public final class HidFrameEncoder {
+    public final static int FRAME_SIZE = 64;
+    public final static int FRAME_HEADER_SIZE = 5;
+    public final static int FRAME_PAYLOAD_SIZE = FRAME_SIZE - FRAME_HEADER_SIZE;
+    public final static int DEFAULT_CHANNEL = 0x0101;
+    public final static byte TAG_APDU = 0x05;
+    /**
+     * APDU length byte (Lc) is single byte, extended length is not supported by device app
+     */
+    public final static int MAX_PAYLOAD_SIZE = 0xFF;
+
+    private final static int LENGTH_PREFIX_SIZE = 2;
+    private final static int APDU_HEADER_SIZE = 5;
+
+    private byte mChannelHi;
+    private byte mChannelLo;
+    private ByteBuffer mPool;
+
+    public HidFrameEncoder() {
+        this(DEFAULT_CHANNEL);
+    }
+
+    public HidFrameEncoder(int channel) {
+        setChannel(channel);
+    }
+
+    /**
+     * @param channel channel id for next encoded commands, device echoes it in response frames
+     */
+    public void setChannel(int channel) {
+        mChannelHi = (byte) ((channel >> 8) & 0xFF);
+        mChannelLo = (byte) (channel & 0xFF);
+    }
+
+    public int getChannel() {
+        return ((mChannelHi & 0xFF) << 8) | (mChannelLo & 0xFF);
+    }
+
+    private static void checkPayload(byte[] payload) {
+        if (payload.length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException(String.format("Payload is too large: %d > %d", payload.length, MAX_PAYLOAD_SIZE));
+        }
+    }
+
+    public static int getFrameCount(APDU apdu) {
+        final int streamLen = LENGTH_PREFIX_SIZE + APDU_HEADER_SIZE + apdu.getPayload().length;
+        return (streamLen + FRAME_PAYLOAD_SIZE - 1) / FRAME_PAYLOAD_SIZE;
+    }
+
+    /**
+     * Encodes APDU into internal buffer, which is reused between calls.
+     * Not thread-safe: returned buffer is valid until next call of this method.
+     * @param apdu command
+     * @return buffer ready to read, from position 0 to limit = frames * {@link #FRAME_SIZE}
+     */
+    @NonNull
+    public ByteBuffer encode(APDU apdu) {
+        checkPayload(apdu.getPayload());
+        final int size = getFrameCount(apdu) * FRAME_SIZE;
+        if (mPool == null || mPool.capacity() < size) {
+            mPool = ByteBuffer.allocate(Math.max(size, FRAME_SIZE * 4));
+        }
+        mPool.clear();
+        encode(apdu, mPool);
+        mPool.flip();
+        return mPool;
+    }
+
+    /**
+     * Writes all frames of APDU into given buffer starting at it's current position
+     * @param apdu command
+     * @param out destination, must have at least {@link #getFrameCount(APDU)} * {@link #FRAME_SIZE} bytes remaining
+     * @return number of written frames
+     */
+    public int encode(APDU apdu, ByteBuffer out) {
+        final byte[] payload = apdu.getPayload();
+        checkPayload(payload);
+        final int frames = getFrameCount(apdu);
+        if (out.remaining() < frames * FRAME_SIZE) {
+            throw new IllegalArgumentException(String.format("Not enough space for %d frames: %d bytes remaining", frames, out.remaining()));
+        }
+
+        final int apduLen = APDU_HEADER_SIZE + payload.length;
+        int payloadOffset = 0;
+        for (int seq = 0; seq < frames; seq++) {
+            final int frameStart = out.position();
+            out.put(mChannelHi);
+            out.put(mChannelLo);
+            out.put(TAG_APDU);
+            out.put((byte) ((seq >> 8) & 0xFF));
+            out.put((byte) (seq & 0xFF));
+
+            if (seq == 0) {
+                out.put((byte) ((apduLen >> 8) & 0xFF));
+                out.put((byte) (apduLen & 0xFF));
+                out.put(apdu.getCls());
+                out.put(apdu.getIns());
+                out.put(apdu.getP1());
+                out.put(apdu.getP2());
+                out.put((byte) payload.length);
+            }
+
+            final int chunk = Math.min(payload.length - payloadOffset, FRAME_SIZE - (out.position() - frameStart));
+            out.put(payload, payloadOffset, chunk);
+            payloadOffset += chunk;
+
+            while (out.position() - frameStart < FRAME_SIZE) {
+                out.put((byte) 0);
+            }
+        }
+
+        return frames;
+    }
+}
@@ -31,9 +31,10 @@ import android.hardware.usb.UsbEndpoint;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import androidx.annotation.Nullable;
 import network.minter.ledger.connector.exceptions.ConnectionException;
 import network.minter.ledger.connector.exceptions.ReadTimeoutException;
 import timber.log.Timber;
@@ -45,16 +46,44 @@ public class LedgerIO {
     private static final int READ_TIMEOUT = 1000;
     private static final int WRITE_TIMEOUT = 1000;
     private static final int BUFSIZ = 4096;
-    private final static Object mIOLock = new Object();
+    private static final int DRAIN_LIMIT = 64;
+    private final Object mIOLock = new Object();
+    private final Object mReadLock = new Object();
     private final ByteBuffer mReadBuffer = ByteBuffer.allocate(BUFSIZ);
-    private UsbEndpoint mInEndpoint;
-    private UsbEndpoint mOutEndpoint;
-    private UsbDeviceConnection mConnection;
+    private final LedgerTransport mTransport;
+    private AtomicBoolean mClosed = new AtomicBoolean(false);
+    private volatile FrameRecorder mFrameRecorder;
 
     public LedgerIO(UsbEndpoint inEndpoint, UsbEndpoint outEndpoint, UsbDeviceConnection connection) {
-        mInEndpoint = inEndpoint;
-        mOutEndpoint = outEndpoint;
-        mConnection = connection;
+        this(new UsbTransport(inEndpoint, outEndpoint, connection));
+    }
+
+    public LedgerIO(LedgerTransport transport) {
+        mTransport = transport;
+    }
+
+    /**
+     * @param recorder receives every written and read frame, null to disable
+     */
+    public void setFrameRecorder(@Nullable FrameRecorder recorder) {
+        mFrameRecorder = recorder;
+    }
+
+    public LedgerTransport getTransport() {
+        return mTransport;
+    }
+
+    /**
+     * @param enable see {@link UsbTransport#setAsyncRead(boolean)}. Has no effect for non-USB transports
+     */
+    public void setAsyncRead(boolean enable) {
+        if (mTransport instanceof UsbTransport) {
+            ((UsbTransport) mTransport).setAsyncRead(enable);
+        }
+    }
+
+    public boolean isAsyncRead() {
+        return mTransport instanceof UsbTransport && ((UsbTransport) mTransport).isAsyncRead();
     }
 
     public byte[] read() throws IOException {
@@ -69,66 +98,128 @@ public class LedgerIO {
         return data;
     }
 
-    private AtomicBoolean mClosed = new AtomicBoolean(false);
-
+    /**
+     * Blocks until device sends non-empty frame, or deadline is reached
+     * @param out destination
+     * @param timeoutS read deadline in seconds, negative value means infinite wait
+     * @return number of bytes read
+     * @throws IOException ReadTimeoutException or ConnectionException
+     */
     public int readWait(byte[] out, long timeoutS) throws IOException {
-        byte[] buf = new byte[out.length];
-        final int size = Math.min(buf.length, mInEndpoint.getMaxPacketSize());
-        int bytesRead;
-        synchronized (mIOLock) {
-            bytesRead = mConnection.bulkTransfer(mInEndpoint, buf, size, READ_TIMEOUT);
-        }
-        int wait = 0;
-        int countNotNull = 0;
-        while (bytesRead == 0 || buf[0] == 0) {
-            Timber.d("Trying to read...");
-
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                throw new ReadTimeoutException(e);
-            }
-            synchronized (mIOLock) {
-                bytesRead = mConnection.bulkTransfer(mInEndpoint, buf, size, READ_TIMEOUT);
-            }
+        return readWait(out, timeoutS, null);
+    }
 
-            wait++;
-            if (wait == timeoutS) {
-                throw new ReadTimeoutException();
-            }
-            if (mClosed.get()) {
-                throw new ConnectionException();
+    /**
+     * Same as {@link #readWait(byte[], long)}, but can be interrupted by token.
+     * Frame received before cancel is still returned, next call throws
+     * @throws IOException ReadTimeoutException, ConnectionException or CanceledException
+     */
+    public int readWait(byte[] out, long timeoutS, @Nullable CancellationToken token) throws IOException {
+        return readWaitUntil(out, timeoutS < 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutS), token);
+    }
+
+    /**
+     * @param deadline {@link System#nanoTime()} based deadline, Long.MAX_VALUE to wait forever
+     * @throws IOException ReadTimeoutException, ConnectionException or CanceledException
+     */
+    public int readWaitUntil(byte[] out, long deadline, @Nullable CancellationToken token) throws IOException {
+        final int size = Math.min(out.length, mTransport.getPacketSize());
+
+        synchronized (mReadLock) {
+            while (true) {
+                if (mClosed.get()) {
+                    throw new ConnectionException();
+                }
+                if (token != null) {
+                    token.throwIfCanceled();
+                }
+                final long left;
+                if (deadline == Long.MAX_VALUE) {
+                    left = Long.MAX_VALUE;
+                } else {
+                    left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (left <= 0) {
+                        throw new ReadTimeoutException();
+                    }
+                }
+
+                final int bytesRead = mTransport.read(out, size, left);
+                if (mClosed.get()) {
+                    continue;
+                }
+                // zero filled frame has no tag
+                if (bytesRead > 2 && out[2] == HidFrameEncoder.TAG_APDU) {
+                    recordFrame(FrameRecorder.Direction.In, out, 0, bytesRead);
+                    return bytesRead;
+                }
+                Timber.d("Trying to read...");
             }
         }
-        System.arraycopy(buf, 0, out, 0, buf.length);
+    }
 
-        return bytesRead;
+    /**
+     * Wakes up {@link #readWait(byte[], long, CancellationToken)} to check its token
+     */
+    public void cancelRead() {
+        mTransport.cancelRead();
+    }
+
+    /**
+     * Reads and drops frames that device has already sent, without waiting for new ones
+     * @return number of dropped frames
+     * @throws IOException if connection is broken
+     */
+    public int drain() throws IOException {
+        final byte[] buffer = mReadBuffer.array();
+        final int size = Math.min(buffer.length, mTransport.getPacketSize());
+        int drained = 0;
+        synchronized (mReadLock) {
+            while (drained < DRAIN_LIMIT) {
+                if (mClosed.get()) {
+                    throw new ConnectionException();
+                }
+                final int bytesRead = mTransport.read(buffer, size, 0);
+                if (bytesRead <= 0) {
+                    break;
+                }
+                recordFrame(FrameRecorder.Direction.In, buffer, 0, bytesRead);
+                drained++;
+            }
+            mReadBuffer.clear();
+        }
+        return drained;
     }
 
     public int read(final byte[] data) throws IOException {
-        final int size = Math.min(data.length, mInEndpoint.getMaxPacketSize());
-        final int bytesRead;
-        synchronized (mIOLock) {
-            bytesRead = mConnection.bulkTransfer(mInEndpoint, data, size, READ_TIMEOUT);
+        final int size = Math.min(data.length, mTransport.getPacketSize());
+        synchronized (mReadLock) {
+            final int bytesRead = mTransport.read(data, size, READ_TIMEOUT);
+            if (bytesRead > 0) {
+                recordFrame(FrameRecorder.Direction.In, data, 0, bytesRead);
+            }
+            return bytesRead;
         }
-        return bytesRead;
     }
 
     public int write(final byte[] data) throws IOException {
-        int length = data.length;
+        return write(data, data.length);
+    }
+
+    public int write(final byte[] data, final int length) throws IOException {
+        final int packetSize = mTransport.getPacketSize();
         int offset = 0;
 
         while (offset < length) {
-            int size = Math.min(length - offset, mInEndpoint.getMaxPacketSize());
+            int size = Math.min(length - offset, packetSize);
             int bytesWritten;
             synchronized (mIOLock) {
-                bytesWritten = mConnection.bulkTransfer(mOutEndpoint,
-                        Arrays.copyOfRange(data, offset, offset + size), size, WRITE_TIMEOUT);
+                bytesWritten = mTransport.write(data, offset, size, WRITE_TIMEOUT);
             }
 
             if (bytesWritten <= 0) {
                 throw new ConnectionException();
             } else {
+                recordFrame(FrameRecorder.Direction.Out, data, offset, bytesWritten);
                 offset += bytesWritten;
             }
 
@@ -136,7 +227,15 @@ public class LedgerIO {
         return offset;
     }
 
+    private void recordFrame(FrameRecorder.Direction direction, byte[] data, int offset, int length) {
+        final FrameRecorder recorder = mFrameRecorder;
+        if (recorder != null) {
+            recorder.record(direction, data, offset, length);
+        }
+    }
+
     public void close() {
         mClosed.set(true);
+        mTransport.close();
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+import timber.log.Timber;
+
+/**
+ * Per-command exchange metrics: result counters by {@link MinterLedger.Status}, frames read,
+ * and latency histograms for each {@link Phase}. Recording is lock-free, one instance can be shared
+ * by several devices, for example by all devices of {@link MinterLedgerPool}.
+ */
+public final class LedgerMetrics {
+    private final static MinterLedger.Command[] COMMANDS = MinterLedger.Command.values();
+    private final static MinterLedger.Status[] STATUSES = MinterLedger.Status.values();
+    private final static Phase[] PHASES = Phase.values();
+
+    private final AtomicLongArray mResults = new AtomicLongArray(COMMANDS.length * STATUSES.length);
+    private final AtomicLongArray mFrames = new AtomicLongArray(COMMANDS.length);
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[COMMANDS.length * PHASES.length];
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    public enum Phase {
+        /**
+         * Writing all request frames
+         */
+        Write,
+        /**
+         * From request written to first response frame. Includes user confirmation time
+         */
+        FirstFrame,
+        /**
+         * From first to last response frame
+         */
+        Reassembly,
+        /**
+         * Whole exchange
+         */
+        Total,
+    }
+
+    public interface Listener {
+        /**
+         * Called on exchange thread after each exchange, must be fast. Phases that were not reached are -1
+         * @param frames response frames read
+         */
+        void onExchange(MinterLedger.Command command, MinterLedger.Status status, int frames,
+                        long writeNanos, long firstFrameNanos, long reassemblyNanos, long totalNanos);
+    }
+
+    public LedgerMetrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Time marks are {@link System#nanoTime()} values, 0 if phase was not reached
+     */
+    void record(MinterLedger.Command command, MinterLedger.Status status, int frames,
+                long startedAt, long writtenAt, long firstFrameAt, long lastFrameAt) {
+        final int cmd = command.ordinal();
+        mResults.incrementAndGet(cmd * STATUSES.length + status.ordinal());
+        mFrames.addAndGet(cmd, frames);
+
+        final long end = lastFrameAt > 0 ? lastFrameAt : System.nanoTime();
+        final long write = writtenAt > 0 ? writtenAt - startedAt : -1;
+        final long firstFrame = firstFrameAt > 0 ? firstFrameAt - writtenAt : -1;
+        final long reassembly = lastFrameAt > 0 ? lastFrameAt - firstFrameAt : -1;
+        final long total = end - startedAt;
+
+        if (write >= 0) {
+            histogram(cmd, Phase.Write).record(write);
+        }
+        if (firstFrame >= 0) {
+            histogram(cmd, Phase.FirstFrame).record(firstFrame);
+        }
+        if (reassembly >= 0) {
+            histogram(cmd, Phase.Reassembly).record(reassembly);
+        }
+        histogram(cmd, Phase.Total).record(total);
+
+        for (Listener listener : mListeners) {
+            try {
+                listener.onExchange(command, status, frames, write, firstFrame, reassembly, total);
+            } catch (Throwable t) {
+                Timber.w(t, "Metrics listener failed");
+            }
+        }
+    }
+
+    private LatencyHistogram histogram(int cmd, Phase phase) {
+        return mHistograms[cmd * PHASES.length + phase.ordinal()];
+    }
+
+    @NonNull
+    public LatencyHistogram getHistogram(MinterLedger.Command command, Phase phase) {
+        return histogram(command.ordinal(), phase);
+    }
+
+    public long getCount(MinterLedger.Command command, MinterLedger.Status status) {
+        return mResults.get(command.ordinal() * STATUSES.length + status.ordinal());
+    }
+
+    /**
+     * @return exchanges of command, whatever status
+     */
+    public long getCount(MinterLedger.Command command) {
+        long total = 0;
+        for (MinterLedger.Status status : STATUSES) {
+            total += getCount(command, status);
+        }
+        return total;
+    }
+
+    /**
+     * @return exchanges of command that ended with any status but {@link MinterLedger.Status#Ok}
+     */
+    public long getErrorCount(MinterLedger.Command command) {
+        return getCount(command) - getCount(command, MinterLedger.Status.Ok);
+    }
+
+    public long getFrameCount(MinterLedger.Command command) {
+        return mFrames.get(command.ordinal());
+    }
+
+    public void reset() {
+        for (int i = 0; i < mResults.length(); i++) {
+            mResults.set(i, 0);
+        }
+        for (int i = 0; i < mFrames.length(); i++) {
+            mFrames.set(i, 0);
+        }
+        for (LatencyHistogram h : mHistograms) {
+            h.reset();
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (MinterLedger.Command command : COMMANDS) {
+            final long count = getCount(command);
+            if (count == 0) {
+                continue;
+            }
+            final LatencyHistogram total = getHistogram(command, Phase.Total);
+            sb.append(String.format(Locale.US, "%s: count=%d errors=%d frames=%d total p50=%.3fms p99=%.3fms max=%.3fms\n",
+                    command.name(), count, getErrorCount(command), getFrameCount(command),
+                    total.getValueAtPercentile(50) / 1e6, total.getValueAtPercentile(99) / 1e6, total.getMax() / 1e6));
+        }
+        return sb.toString();
+    }
+}
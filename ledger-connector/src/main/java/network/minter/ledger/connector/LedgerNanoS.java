@@ -40,7 +40,12 @@ import android.hardware.usb.UsbManager;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import network.minter.core.crypto.BytesData;
 import network.minter.ledger.connector.exceptions.ConnectionException;
@@ -57,6 +62,7 @@ public class LedgerNanoS {
     public final static int NANOS_VID = 0x2c97;
     public final static int NANOS_PID = 0x0001;
     private static final String ACTION_USB_PERMISSION = "com.android.example.USB_PERMISSION";
+    private static final Random sChannelRandom = new Random();
     protected UsbDevice mDev;
     protected UsbInterface mUsbInterface;
     protected UsbEndpoint mInEndpoint;
@@ -68,37 +74,35 @@ public class LedgerNanoS {
     protected AtomicBoolean mPermissionsGranted = new AtomicBoolean(false);
     protected AtomicBoolean mDeviceReady = new AtomicBoolean(false);
     protected AtomicBoolean mAskedPerm = new AtomicBoolean(false);
+    protected boolean mAsyncRead = true;
+    protected final HidFrameEncoder mFrameEncoder = new HidFrameEncoder();
+    protected final FrameTracer mFrameTracer = new FrameTracer();
+    protected final FrameRecorder mFrameRecorder = new FrameRecorder();
+    protected final ConnectionTimeline mTimeline = new ConnectionTimeline();
+    /**
+     * Channel id of last written command. Starts from random value on every connect, so answers to commands of previous
+     * session can't be taken for current ones
+     */
+    private final AtomicInteger mChannel = new AtomicInteger(HidFrameEncoder.DEFAULT_CHANNEL);
+    private ConnectionTimeline.Listener mTimelineListener;
     private DeviceListener mDeviceListener;
-    private final BroadcastReceiver mUsbReceiver = new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if (ACTION_USB_PERMISSION.equals(action)) {
-                synchronized (this) {
-                    onPermissionsResult(context, intent);
-                }
-            }
-
-            if (ACTION_USB_DEVICE_DETACHED.equals(action)) {
-                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-                if (device != null) {
-                    if (mDeviceReady.get()) {
-                        Timber.d("Ledger App Closed...");
-                        disconnect();
-                        if (mDeviceListener != null) {
-                            mDeviceListener.onDisconnected();
-                        }
-                    }
-                }
-            }
-
-        }
-    };
+    private BroadcastReceiver mUsbReceiver;
     private PendingIntent mPermissionIntent;
+    private UsbDevice mPinnedDevice;
 
     public LedgerNanoS(Context context, UsbManager manager) {
+        this(context, manager, null);
+    }
+
+    /**
+     * @param device bind handle to exact device, useful when multiple Nano S are attached. If null, first found device will be used
+     */
+    public LedgerNanoS(Context context, UsbManager manager, UsbDevice device) {
+        mPinnedDevice = device;
         mContext = new WeakReference<>(context);
         mUsbManager = new WeakReference<>(manager);
         mPermissionIntent = PendingIntent.getBroadcast(mContext.get(), 0, new Intent(ACTION_USB_PERMISSION), 0);
+        mUsbReceiver = createUsbReceiver();
 
         IntentFilter filter = new IntentFilter();
         filter.addAction(ACTION_USB_PERMISSION);
@@ -106,19 +110,93 @@ public class LedgerNanoS {
         mContext.get().registerReceiver(mUsbReceiver, filter);
     }
 
+    /**
+     * Creates handle over custom transport, for example, emulator. Handle is ready immediately,
+     * and has no USB lifecycle: search and permissions are not required.
+     */
+    protected LedgerNanoS(LedgerTransport transport) {
+        mLedgerIO = new LedgerIO(transport);
+        mLedgerIO.setFrameRecorder(mFrameRecorder);
+        startSession();
+        mPermissionsGranted.set(true);
+        mDeviceReady.set(true);
+        mTimeline.mark(ConnectionTimeline.Stage.Ready);
+    }
+
+    private BroadcastReceiver createUsbReceiver() {
+        return new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String action = intent.getAction();
+                if (ACTION_USB_PERMISSION.equals(action)) {
+                    synchronized (this) {
+                        onPermissionsResult(context, intent);
+                    }
+                }
+
+                if (ACTION_USB_DEVICE_DETACHED.equals(action)) {
+                    UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                    if (device != null && isSameDevice(device)) {
+                        if (mDeviceReady.get()) {
+                            Timber.d("Ledger App Closed...");
+                            disconnect();
+                            if (mDeviceListener != null) {
+                                mDeviceListener.onDisconnected();
+                            }
+                        }
+                    }
+                }
+
+            }
+        };
+    }
+
     public void setDeviceListener(DeviceListener listener) {
         mDeviceListener = listener;
     }
 
+    /**
+     * @return current listener, so wrappers can forward events to it instead of replacing
+     */
+    public DeviceListener getDeviceListener() {
+        return mDeviceListener;
+    }
+
+    public void setConnectionTimelineListener(ConnectionTimeline.Listener listener) {
+        mTimelineListener = listener;
+    }
+
+    /**
+     * @return setup stages of current (or being established) connection
+     */
+    public ConnectionTimeline getConnectionTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * @param enable see {@link LedgerIO#setAsyncRead(boolean)}
+     */
+    public void setAsyncRead(boolean enable) {
+        mAsyncRead = enable;
+        if (mLedgerIO != null) {
+            mLedgerIO.setAsyncRead(enable);
+        }
+    }
+
     public boolean isConnected() {
+        if (mUsbManager == null) {
+            return mLedgerIO != null;
+        }
         return findDevice() != null;
     }
 
     public synchronized boolean search() {
         if (isReady()) return true;
         Timber.i("Searching device...");
+        mTimeline.mark(ConnectionTimeline.Stage.Search);
         mDev = findDevice();
         if (mDev != null) {
+            mTimeline.mark(ConnectionTimeline.Stage.DeviceFound);
             askPermissions();
             return true;
         }
@@ -129,6 +207,7 @@ public class LedgerNanoS {
     public void disconnect() {
         mPermissionsGranted.set(false);
         mDeviceReady.set(false);
+        mTimeline.reset();
 
         if (mUsbInterface != null && mConnection != null) {
             Timber.d("Claiming interface.");
@@ -155,7 +234,10 @@ public class LedgerNanoS {
             mConnection.close();
         }
         if (mContext != null) {
-            mContext.get().unregisterReceiver(mUsbReceiver);
+            if (mContext.get() != null && mUsbReceiver != null) {
+                mContext.get().unregisterReceiver(mUsbReceiver);
+                mUsbReceiver = null;
+            }
             mContext.clear();
         }
         if (mUsbManager != null) {
@@ -167,31 +249,113 @@ public class LedgerNanoS {
         return new BytesData(mLedgerIO.read());
     }
 
+    /**
+     * @return all attached Nano S devices
+     */
+    public static List<UsbDevice> findDevices(UsbManager manager) {
+        final List<UsbDevice> out = new ArrayList<>();
+        for (UsbDevice usbDevice : manager.getDeviceList().values()) {
+            if (isNanoS(usbDevice)) {
+                out.add(usbDevice);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return true if device is Nano S with single (HID) interface, useful to filter attach/detach broadcasts
+     */
+    public static boolean isNanoS(UsbDevice usbDevice) {
+        return usbDevice.getVendorId() == LedgerNanoS.NANOS_VID
+                && usbDevice.getProductId() == LedgerNanoS.NANOS_PID
+                && usbDevice.getInterfaceCount() == 1;
+    }
+
     protected UsbDevice findDevice() {
         if (mUsbManager == null || mUsbManager.get() == null) {
             return null;
         }
 
-        for (UsbDevice usbDevice : mUsbManager.get().getDeviceList().values()) {
-            if (usbDevice.getVendorId() == LedgerNanoS.NANOS_VID && usbDevice.getProductId() == LedgerNanoS.NANOS_PID) {
-                if (usbDevice.getInterfaceCount() == 1) {
-                    return usbDevice;
-                }
+        for (UsbDevice usbDevice : findDevices(mUsbManager.get())) {
+            if (mPinnedDevice == null || mPinnedDevice.getDeviceName().equals(usbDevice.getDeviceName())) {
+                return usbDevice;
             }
         }
 
         return null;
     }
 
+    /**
+     * @return true if given device is the one this handle works with
+     */
+    protected boolean isSameDevice(UsbDevice device) {
+        final UsbDevice own = mDev != null ? mDev : mPinnedDevice;
+        return own == null || own.getDeviceName().equals(device.getDeviceName());
+    }
+
     public void write(APDU apdu) throws IOException {
+        write(apdu, mChannel.get() & 0xFFFF);
+    }
+
+    /**
+     * Writes command on given channel, device answers on the same one
+     * @see #nextChannel()
+     */
+    protected void write(APDU apdu, int channel) throws IOException {
+        final LedgerIO io = mLedgerIO;
+        if (io == null) {
+            throw new ConnectionException();
+        }
         try {
-            mLedgerIO.write(apdu.getData());
+            synchronized (mFrameEncoder) {
+                mFrameEncoder.setChannel(channel);
+                ByteBuffer frames = mFrameEncoder.encode(apdu);
+                if (mFrameTracer.isEnabled()) {
+                    mFrameTracer.traceWrite(frames);
+                }
+                io.write(frames.array(), frames.limit());
+            }
         } catch (ConnectionException e) {
             disconnect();
             throw e;
         }
     }
 
+    /**
+     * Enables hex dump of every written and read frame to Timber debug log. Off by default
+     */
+    public void setFrameTracing(boolean enabled) {
+        mFrameTracer.setEnabled(enabled);
+    }
+
+    /**
+     * Last frames sent to and received from device, survives reconnects. Dump it when exchange fails:
+     * <pre>
+     * catch (ResponseException e) {
+     *     Timber.e(e, "Sign failed, recent frames:\n%s", ledger.getFrameRecorder().dump());
+     * }
+     * </pre>
+     */
+    public FrameRecorder getFrameRecorder() {
+        return mFrameRecorder;
+    }
+
+    /**
+     * @return channel id for next command, each command gets its own one. Ids with zero high byte are skipped,
+     * as frame starting with zero looks like empty one
+     */
+    protected int nextChannel() {
+        int channel;
+        do {
+            channel = mChannel.incrementAndGet() & 0xFFFF;
+        } while (channel < 0x0100);
+        return channel;
+    }
+
+    private void startSession() {
+        mChannel.set(0x0100 + sChannelRandom.nextInt(0x10000 - 0x0100));
+    }
+
     public boolean isReady() {
         return mDeviceReady.get() && mPermissionsGranted.get();
     }
@@ -206,6 +370,7 @@ public class LedgerNanoS {
         if (mDev != null && mUsbManager.get().hasPermission(mDev)) {
             Timber.d("Permissions already granted for dev: %s", mDev.toString());
             mPermissionsGranted.set(true);
+            mTimeline.mark(ConnectionTimeline.Stage.PermissionGranted);
         }
 
         if (mPermissionsGranted.get()) {
@@ -214,6 +379,7 @@ public class LedgerNanoS {
             if (mAskedPerm.get()) return;
             Timber.d("Asking Permissions for dev: %s", mDev.toString());
             mAskedPerm.set(true);
+            mTimeline.mark(ConnectionTimeline.Stage.PermissionRequested);
             mUsbManager.get().requestPermission(mDev, mPermissionIntent);
         }
     }
@@ -231,12 +397,17 @@ public class LedgerNanoS {
     }
 
     private void onPermissionsResult(Context context, Intent intent) {
+        UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+        if (device != null && !isSameDevice(device)) {
+            // result for another device handle
+            return;
+        }
         try {
-            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
             if (intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
                 if (device != null) {
                     Timber.d("Permissions granted");
                     mPermissionsGranted.set(true);
+                    mTimeline.mark(ConnectionTimeline.Stage.PermissionGranted);
                     if (mDeviceReady.get()) {
                         notifyDeviceReady();
                     }
@@ -295,11 +466,19 @@ public class LedgerNanoS {
             notifyError(CODE_CANT_OPEN_DEVICE, null);
             return;
         }
+        mTimeline.mark(ConnectionTimeline.Stage.DeviceOpened);
         Timber.d("Claiming interface.");
         mConnection.claimInterface(mUsbInterface, true);
+        mTimeline.mark(ConnectionTimeline.Stage.InterfaceClaimed);
         initIO();
         Timber.d("Device is Ready");
         mDeviceReady.set(true);
+        if (mTimeline.mark(ConnectionTimeline.Stage.Ready)) {
+            Timber.d("Connection timeline: %s", mTimeline);
+            if (mTimelineListener != null) {
+                mTimelineListener.onConnectionReady(mTimeline);
+            }
+        }
 
         if (mDeviceListener != null && mPermissionsGranted.get()) {
             mDeviceListener.onDeviceReady();
@@ -310,6 +489,9 @@ public class LedgerNanoS {
         if (mConnection != null) {
             Timber.i("Init IO");
             mLedgerIO = new LedgerIO(mInEndpoint, mOutEndpoint, mConnection);
+            mLedgerIO.setAsyncRead(mAsyncRead);
+            mLedgerIO.setFrameRecorder(mFrameRecorder);
+            startSession();
         } else {
             notifyError(CODE_NO_CONNECTION, null);
             Timber.e("Can't init IO: connection is uninitialized");
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.IOException;
+
+/**
+ * Frame level transport between host and device. Implementations must allow {@link #close()}
+ * to be called from any thread while other thread waits in {@link #read(byte[], int, long)}.
+ */
+public interface LedgerTransport {
+    /**
+     * @return max size of single frame
+     */
+    int getPacketSize();
+
+    /**
+     * Waits for single frame
+     * @param out destination
+     * @param length max bytes to read
+     * @param timeoutMs max time to wait, {@link Long#MAX_VALUE} means infinite wait, 0 - return only already received frame.
+     *                  Poll must not block and must not break next read if nothing has been received
+     * @return number of read bytes, 0 or negative if nothing has been received in time
+     * @throws IOException if connection is broken
+     */
+    int read(byte[] out, int length, long timeoutMs) throws IOException;
+
+    /**
+     * Writes single frame
+     * @return number of written bytes, 0 or negative on failure
+     * @throws IOException if connection is broken
+     */
+    int write(byte[] data, int offset, int length, long timeoutMs) throws IOException;
+
+    /**
+     * Wakes up reader blocked in {@link #read(byte[], int, long)}, which must return 0 as soon as possible.
+     * If nobody reads at the moment, next read may return 0 right away. May be called from any thread
+     */
+    void cancelRead();
+
+    void close();
+}
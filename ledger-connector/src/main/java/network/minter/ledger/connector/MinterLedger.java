@@ -31,24 +31,56 @@ import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.util.Pair;
 import network.minter.blockchain.models.operational.SignatureSingleData;
 import network.minter.core.crypto.BytesData;
 import network.minter.core.crypto.MinterAddress;
-import network.minter.core.internal.helpers.StringHelper;
+import network.minter.ledger.connector.exceptions.CanceledException;
 import network.minter.ledger.connector.exceptions.ConnectionException;
+import network.minter.ledger.connector.exceptions.ReadTimeoutException;
 import network.minter.ledger.connector.exceptions.ResponseException;
 import timber.log.Timber;
 
 public class MinterLedger extends LedgerNanoS {
 
+    private final static int LEGACY_READ_TIMEOUT_SECONDS = 60;
+
+    /**
+     * If changed, becomes response deadline of every command for ledgers created afterwards, negative value means infinite wait.
+     * @deprecated will be removed in next release, set deadlines per command with {@link #getReadDeadlines()}
+     */
+    @Deprecated
+    public static int READ_TIMEOUT_SECONDS = LEGACY_READ_TIMEOUT_SECONDS;
+
+    private final Object mExchangeLock = new Object();
+    private final HidFrameDecoder mFrameDecoder = new HidFrameDecoder();
     /**
-     * Use -1 to infinite wait, but it's bad idea
+     * Some command has been abandoned after write, so device may have its answer queued.
+     * Not guarded by {@link #mExchangeLock}, as it's set by {@link #disconnect()} from any thread
      */
-    public static int READ_TIMEOUT_SECONDS = 60;
+    private final AtomicBoolean mDrainPending = new AtomicBoolean(false);
+    private final AtomicLong mDroppedFrames = new AtomicLong(0);
+    private final byte[] mFrameBuffer = new byte[HidFrameEncoder.FRAME_SIZE];
+    private AddressCache mAddressCache;
+    private AddressIndex mAddressIndex;
+    private volatile boolean mAddressCacheVerified = false;
+    private volatile LedgerMetrics mMetrics = new LedgerMetrics();
+    private final RequestCoalescer mCoalescer = new RequestCoalescer();
+    private final ExchangeScheduler mScheduler = new ExchangeScheduler();
+    private final ReadDeadlines mReadDeadlines = createReadDeadlines();
+    private final RetryPolicy mRetryPolicy = new RetryPolicy();
+    private final AtomicInteger mUserCalls = new AtomicInteger(0);
+    private volatile AddressPrefetcher mPrefetcher;
 
     public enum Command {
         GetVersion(0x01, 0, 0),
@@ -79,6 +111,7 @@ public class MinterLedger extends LedgerNanoS {
         CommonIOError(0xFF05),
         DeviceError(0xFF06),
         Canceled(0xFF07),
+        DeviceBusy(0xFF08),
         ;
         short mValue;
 
@@ -105,21 +138,161 @@ public class MinterLedger extends LedgerNanoS {
         super(context, manager);
     }
 
+    public MinterLedger(Context context, UsbManager manager, UsbDevice device) {
+        super(context, manager, device);
+    }
+
+    /**
+     * Creates ready to use handle over custom transport, for example, emulator from connector test fixtures
+     */
+    public MinterLedger(LedgerTransport transport) {
+        super(transport);
+    }
+
     public UsbDevice getDevice() {
         return mDev;
     }
 
+    /**
+     * Enables cache for silent address derivation. Cache is verified on first use after each connection:
+     * index 0 is derived from device and compared with the stored one, so other device seed invalidates it.
+     * @param cache cache or null to disable
+     */
+    public void setAddressCache(AddressCache cache) {
+        mAddressCache = cache;
+        mAddressCacheVerified = false;
+    }
+
+    /**
+     * Every derived address will be added to this index
+     * @param index index or null to disable
+     */
+    public void setAddressIndex(AddressIndex index) {
+        mAddressIndex = index;
+    }
+
+    /**
+     * Resolves address to derive index using {@link AddressIndex}, without device exchange
+     * @return derive index or {@link AddressIndex#NOT_FOUND}
+     */
+    public int findDeriveIndex(MinterAddress address) {
+        final AddressIndex index = mAddressIndex;
+        return index == null ? AddressIndex.NOT_FOUND : index.indexOf(address);
+    }
+
+    /**
+     * Exchange metrics are collected by default, each handle has own registry
+     * @param metrics shared registry, or null to stop collecting
+     */
+    public void setMetrics(@Nullable LedgerMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Nullable
+    public LedgerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Concurrent identical requests of idempotent commands share one exchange
+     */
+    public RequestCoalescer getCoalescer() {
+        return mCoalescer;
+    }
+
+    /**
+     * Response deadlines per command. Call deadline can be shortened by {@link CancellationToken#withTimeout}
+     */
+    public ReadDeadlines getReadDeadlines() {
+        return mReadDeadlines;
+    }
+
+    /**
+     * Repeats of silent idempotent commands after transient I/O failures
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * @return number of dropped frames, that belong to canceled or timed out commands
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrames.get();
+    }
+
+    /**
+     * Device requests are queued by priority, see {@link ExchangeScheduler}
+     */
+    public ExchangeScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Opt-in speculative derivation of next silent addresses, see {@link AddressPrefetcher}
+     * @param depth how many addresses after last requested one to derive, 0 to disable
+     */
+    public void setAddressPrefetch(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Depth must be positive");
+        }
+        final AddressPrefetcher old = mPrefetcher;
+        mPrefetcher = depth == 0 ? null : new AddressPrefetcher(this, depth);
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    @Nullable
+    public AddressPrefetcher getAddressPrefetcher() {
+        return mPrefetcher;
+    }
+
+    /**
+     * @return true if no user call is running or waiting for device
+     */
+    boolean isIdle() {
+        return mUserCalls.get() == 0;
+    }
+
+    @Override
+    public void destroy() {
+        final AddressPrefetcher prefetcher = mPrefetcher;
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+        super.destroy();
+    }
+
+    @Override
+    public void disconnect() {
+        final AddressPrefetcher prefetcher = mPrefetcher;
+        if (prefetcher != null) {
+            prefetcher.clear();
+        }
+        mAddressCacheVerified = false;
+        mDrainPending.set(true);
+        super.disconnect();
+    }
+
     public Pair<Status, SignatureSingleData> signTxHash(BytesData unsignedTxHash) throws ResponseException {
         return signTxHash(0, unsignedTxHash);
     }
 
     public Pair<Status, SignatureSingleData> signTxHash(int deriveIndex, BytesData unsignedTxHash) throws ResponseException {
+        return signTxHash(deriveIndex, unsignedTxHash, null);
+    }
+
+    /**
+     * @param token cancels waiting for user confirmation
+     */
+    public Pair<Status, SignatureSingleData> signTxHash(int deriveIndex, BytesData unsignedTxHash, @Nullable CancellationToken token) throws ResponseException {
         final ExchangeResult result;
         try {
             BytesData tmp = new BytesData(unsignedTxHash.size() + 4);
             tmp.write(0, deriveIndex);
             tmp.write(4, unsignedTxHash);
-            result = exchange(Command.SignHash, tmp.getBytes());
+            result = exchange(Command.SignHash, tmp.getBytes(), token);
         } catch (IOException e) {
             throw new ResponseException(e);
         }
@@ -132,13 +305,103 @@ public class MinterLedger extends LedgerNanoS {
             throw new ResponseException(result);
         }
 
-        SignatureSingleData sig = new SignatureSingleData(
-                result.data.takeRange(0, 32),
-                result.data.takeRange(32, 64),
-                result.data.takeLast(1)
-        );
+        return new Pair<>(result.status, toSignature(result.data));
+    }
+
+    /**
+     * Signs hashes one by one, holding device for the whole batch. Command is built once, next hash
+     * is written right after previous signature is received. Each hash still needs user confirmation.
+     * @param requests derive index and hash pairs
+     * @param listener optional progress listener, called on the calling thread after each signature
+     * @return signatures in the same order as requests
+     * @throws ResponseException on first failed item
+     */
+    public List<SignatureSingleData> signTxHashes(List<SignRequest> requests, @Nullable SignProgressListener listener) throws ResponseException {
+        return signTxHashes(requests, listener, null);
+    }
+
+    /**
+     * @param token cancels the rest of the batch
+     * @see #signTxHashes(List, SignProgressListener)
+     */
+    public List<SignatureSingleData> signTxHashes(List<SignRequest> requests, @Nullable SignProgressListener listener, @Nullable CancellationToken token) throws ResponseException {
+        mUserCalls.incrementAndGet();
+        try {
+            return signBatch(requests, listener, token);
+        } finally {
+            onUserCallFinished();
+        }
+    }
+
+    private List<SignatureSingleData> signBatch(List<SignRequest> requests, @Nullable SignProgressListener listener, @Nullable CancellationToken token) throws ResponseException {
+        final int total = requests.size();
+        final List<SignatureSingleData> out = new ArrayList<>(total);
+        final byte[] payload = new byte[4 + 32];
+        final APDU apdu = new APDU(Command.SignHash.mIns, Command.SignHash.mP1, Command.SignHash.mP2, payload);
+
+        acquireDevice(ExchangeScheduler.Priority.Interactive, token);
+        try {
+            for (int i = 0; i < total; i++) {
+                final SignRequest request = requests.get(i);
+                final SignatureSingleData sig;
+                // device is held by scheduler for the whole batch, lock is taken per item to not run listener under it
+                synchronized (mExchangeLock) {
+                    writeIndex(payload, 0, request.deriveIndex);
+                    System.arraycopy(request.hash.getBytes(), 0, payload, 4, 32);
+                    try {
+                        if (!transceive(Command.SignHash, apdu, token)) {
+                            throw new ResponseException(Status.ConnectionLost);
+                        }
+                    } catch (ResponseException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        throw new ResponseException(e);
+                    }
+
+                    if ((short) mFrameDecoder.getStatusCode() != Status.Ok.mValue || mFrameDecoder.getDataLength() == 0) {
+                        throw new ResponseException(createResult());
+                    }
+
+                    sig = toSignature(new BytesData(mFrameDecoder.copyData()));
+                }
+                out.add(sig);
+                if (listener != null) {
+                    listener.onProgress(i, total, sig);
+                }
+            }
+        } finally {
+            mScheduler.release();
+        }
+
+        return out;
+    }
+
+    private void acquireDevice(ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws ResponseException {
+        try {
+            mScheduler.acquire(priority, token);
+        } catch (IOException e) {
+            throw new ResponseException(e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ReadDeadlines createReadDeadlines() {
+        final ReadDeadlines deadlines = new ReadDeadlines();
+        final int legacyTimeout = READ_TIMEOUT_SECONDS;
+        if (legacyTimeout != LEGACY_READ_TIMEOUT_SECONDS) {
+            for (Command command : Command.values()) {
+                deadlines.setTimeout(command, legacyTimeout, TimeUnit.SECONDS);
+            }
+        }
+        return deadlines;
+    }
 
-        return new Pair<>(result.status, sig);
+    private static SignatureSingleData toSignature(BytesData data) {
+        return new SignatureSingleData(
+                data.takeRange(0, 32),
+                data.takeRange(32, 64),
+                data.takeLast(1)
+        );
     }
 
     public Pair<Status, MinterAddress> getAddress() throws ResponseException {
@@ -146,11 +409,86 @@ public class MinterLedger extends LedgerNanoS {
     }
 
     public Pair<Status, MinterAddress> getAddress(int deriveIndex, boolean silent) throws ResponseException {
+        return getAddress(deriveIndex, silent, null);
+    }
+
+    public Pair<Status, MinterAddress> getAddress(int deriveIndex, boolean silent, @Nullable CancellationToken token) throws ResponseException {
+        final Command command = silent ? Command.GetAddressSilent : Command.GetAddress;
+        return getAddress(deriveIndex, silent, ExchangeScheduler.defaultPriority(command), token);
+    }
+
+    /**
+     * @param priority queue class of device request, if address is not taken from cache or prefetch window
+     * @see #getAddress(int, boolean, CancellationToken)
+     */
+    public Pair<Status, MinterAddress> getAddress(int deriveIndex, boolean silent, ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws ResponseException {
+        // counted from the start, so prefetch, moved by lookup, does not get ahead of this call
+        mUserCalls.incrementAndGet();
+        try {
+            return resolveAddress(deriveIndex, silent, priority, token);
+        } finally {
+            onUserCallFinished();
+        }
+    }
+
+    private Pair<Status, MinterAddress> resolveAddress(int deriveIndex, boolean silent, ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws ResponseException {
+        final AddressCache cache = silent ? getVerifiedCache(priority, token) : null;
+        if (cache != null) {
+            final MinterAddress cached = cache.get(deriveIndex);
+            if (cached != null) {
+                return new Pair<>(Status.Ok, cached);
+            }
+        }
+        final AddressPrefetcher prefetcher = silent ? mPrefetcher : null;
+        if (prefetcher != null) {
+            // device owner (e.g. sign progress listener) must not wait for prefetch, that waits for the device
+            final MinterAddress prefetched = mScheduler.isHeldByCurrentThread()
+                    ? prefetcher.lookup(deriveIndex)
+                    : prefetcher.lookup(deriveIndex, token);
+            if (prefetched != null) {
+                return new Pair<>(Status.Ok, prefetched);
+            }
+        }
+
+        final MinterAddress address = deriveAddress(deriveIndex, silent, priority, token);
+        onAddressDerived(deriveIndex, address);
+        return new Pair<>(Status.Ok, address);
+    }
+
+    private void onAddressDerived(int deriveIndex, MinterAddress address) {
+        if (mAddressCache != null && mAddressCacheVerified) {
+            mAddressCache.put(deriveIndex, address);
+        }
+        if (mAddressIndex != null) {
+            mAddressIndex.put(address, deriveIndex);
+        }
+    }
+
+    private AddressCache getVerifiedCache(ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws ResponseException {
+        final AddressCache cache = mAddressCache;
+        if (cache == null) {
+            return null;
+        }
+        if (!mAddressCacheVerified) {
+            final MinterAddress fingerprint = deriveAddress(0, true, priority, token);
+            try {
+                cache.bind(fingerprint.getData());
+            } catch (IOException e) {
+                Timber.w(e, "Unable to open address cache");
+                return null;
+            }
+            mAddressCacheVerified = true;
+            onAddressDerived(0, fingerprint);
+        }
+        return cache;
+    }
+
+    private MinterAddress deriveAddress(int deriveIndex, boolean silent, ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws ResponseException {
         final ExchangeResult result;
         try {
             BytesData payload = new BytesData(4);
             payload.write(0, deriveIndex);
-            result = exchange(silent ? Command.GetAddressSilent : Command.GetAddress, payload.getBytes());
+            result = exchange(silent ? Command.GetAddressSilent : Command.GetAddress, payload.getBytes(), priority, token);
         } catch (IOException e) {
             throw new ResponseException(e);
         }
@@ -163,7 +501,89 @@ public class MinterLedger extends LedgerNanoS {
             throw new ResponseException(result);
         }
 
-        return new Pair<>(result.status, new MinterAddress(result.data.getData()));
+        return new MinterAddress(result.data.getData());
+    }
+
+    /**
+     * Derives addresses [fromIndex, fromIndex + count) in one go: device is locked for the whole batch,
+     * command and payload are built once and next request is written right after previous response.
+     * @return addresses, where out[i] belongs to index fromIndex + i
+     * @throws ResponseException on first failed derivation
+     */
+    public MinterAddress[] getAddresses(int fromIndex, int count, boolean silent) throws ResponseException {
+        return getAddresses(fromIndex, count, silent, null);
+    }
+
+    /**
+     * @param token cancels the rest of the batch
+     * @see #getAddresses(int, int, boolean)
+     */
+    public MinterAddress[] getAddresses(int fromIndex, int count, boolean silent, @Nullable CancellationToken token) throws ResponseException {
+        return getAddresses(fromIndex, count, silent, ExchangeScheduler.Priority.Normal, token);
+    }
+
+    /**
+     * @param priority batch gives device away between addresses, if request of higher priority is waiting
+     * @see #getAddresses(int, int, boolean)
+     */
+    public MinterAddress[] getAddresses(int fromIndex, int count, boolean silent, ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws ResponseException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must be positive");
+        }
+        mUserCalls.incrementAndGet();
+        try {
+            return deriveBatch(fromIndex, count, silent, priority, token);
+        } finally {
+            onUserCallFinished();
+        }
+    }
+
+    private MinterAddress[] deriveBatch(int fromIndex, int count, boolean silent, ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws ResponseException {
+        final Command command = silent ? Command.GetAddressSilent : Command.GetAddress;
+        final byte[] payload = new byte[4];
+        final APDU apdu = new APDU(command.mIns, command.mP1, command.mP2, payload);
+        final MinterAddress[] out = new MinterAddress[count];
+        final AddressCache cache = silent ? getVerifiedCache(priority, token) : null;
+
+        acquireDevice(priority, token);
+        boolean held = true;
+        try {
+            for (int i = 0; i < count; i++) {
+                if (cache != null && (out[i] = cache.get(fromIndex + i)) != null) {
+                    continue;
+                }
+                if (i > 0 && mScheduler.hasWaitersAbove(priority)) {
+                    held = false;
+                    mScheduler.release();
+                    acquireDevice(priority, token);
+                    held = true;
+                }
+                writeIndex(payload, 0, fromIndex + i);
+                synchronized (mExchangeLock) {
+                    try {
+                        if (!transceiveRetrying(command, apdu, token)) {
+                            throw new ResponseException(Status.ConnectionLost);
+                        }
+                    } catch (ResponseException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        throw new ResponseException(e);
+                    }
+
+                    if ((short) mFrameDecoder.getStatusCode() != Status.Ok.mValue || mFrameDecoder.getDataLength() == 0) {
+                        throw new ResponseException(createResult());
+                    }
+                    out[i] = new MinterAddress(mFrameDecoder.copyData());
+                }
+                onAddressDerived(fromIndex + i, out[i]);
+            }
+        } finally {
+            if (held) {
+                mScheduler.release();
+            }
+        }
+
+        return out;
     }
 
     public Pair<Status, String> getVersion() throws ResponseException {
@@ -182,7 +602,9 @@ public class MinterLedger extends LedgerNanoS {
             throw new ResponseException(result);
         }
 
-        dumpData(result.data);
+        if (mFrameTracer.isEnabled()) {
+            mFrameTracer.traceResponse(result.data.getData());
+        }
 
         char maj = result.data.at(0);
         char min = result.data.at(1);
@@ -193,67 +615,250 @@ public class MinterLedger extends LedgerNanoS {
     }
 
     public ExchangeResult exchange(@NonNull Command command, byte[] payload) throws IOException {
-        APDU apdu = new APDU(command.mIns, command.mP1, command.mP2, payload);
-        Timber.d("Write APDU frame: %s", dumpData(apdu.getData()));
+        return exchange(command, payload, null);
+    }
+
+    /**
+     * @param token cancels exchange from another thread. Waiting for response is interrupted
+     *              and late response of canceled command is skipped by the next exchange
+     * @throws network.minter.ledger.connector.exceptions.CanceledException if canceled
+     */
+    public ExchangeResult exchange(@NonNull Command command, byte[] payload, @Nullable CancellationToken token) throws IOException {
+        return exchange(command, payload, ExchangeScheduler.defaultPriority(command), token);
+    }
+
+    /**
+     * @param priority queue class, see {@link ExchangeScheduler}
+     * @throws network.minter.ledger.connector.exceptions.DeviceBusyException if queue of this priority is full
+     */
+    public ExchangeResult exchange(@NonNull Command command, byte[] payload, @NonNull ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws IOException {
+        mUserCalls.incrementAndGet();
         try {
-            write(apdu);
-        } catch (ConnectionException e) {
-            return new ExchangeResult(Status.ConnectionLost);
+            return exchangeCoalesced(command, payload, priority, token);
+        } finally {
+            onUserCallFinished();
         }
-        BytesData buffer = new BytesData(0xFF);
+    }
 
-        short seqn = 0;
-        byte[] buf = new byte[64];
+    /**
+     * Silent derivation for {@link AddressPrefetcher}, not counted as user call
+     */
+    MinterAddress prefetchAddress(int deriveIndex, CancellationToken token) throws IOException {
+        final byte[] payload = new byte[4];
+        writeIndex(payload, 0, deriveIndex);
+        final ExchangeResult result = exchangeCoalesced(Command.GetAddressSilent, payload, ExchangeScheduler.Priority.Background, token);
+        if (result.status != Status.Ok || result.data == null || result.data.size() == 0) {
+            throw new ResponseException(result);
+        }
+        final MinterAddress address = new MinterAddress(result.data.getData());
+        onAddressDerived(deriveIndex, address);
+        return address;
+    }
 
-        mLedgerIO.readWait(buf, READ_TIMEOUT_SECONDS);
-        Timber.d("Read frame[%d:%d]: %s", seqn, 64, dumpData(buf));
+    /**
+     * @return true if silent address is in verified cache, so there is no need to derive it
+     */
+    boolean isAddressCached(int deriveIndex) {
+        final AddressCache cache = mAddressCache;
+        return cache != null && mAddressCacheVerified && cache.get(deriveIndex) != null;
+    }
 
-        buffer.write(0, buf);
+    private void onUserCallFinished() {
+        if (mUserCalls.decrementAndGet() == 0) {
+            final AddressPrefetcher prefetcher = mPrefetcher;
+            if (prefetcher != null) {
+                prefetcher.onIdle();
+            }
+        }
+    }
 
-        short channelId = buffer.toUShortBigInt(0).shortValue();
-        char commandTag = buffer.at(2);
-        seqn = buffer.toUShortBigInt(3).shortValue();
-        short commonDataLen = buffer.toUShortBigInt(5).shortValue();
-        int offset = 0;
-        if (channelId != 0x0101) {
-            throw new IOException(String.format("Unknown channel id %d", channelId));
+    private ExchangeResult exchangeCoalesced(Command command, byte[] payload, ExchangeScheduler.Priority priority, @Nullable CancellationToken token) throws IOException {
+        final RequestCoalescer.Exchange exchange = () -> {
+            APDU apdu = new APDU(command.mIns, command.mP1, command.mP2, payload);
+            mScheduler.acquire(priority, token);
+            try {
+                synchronized (mExchangeLock) {
+                    if (!transceiveRetrying(command, apdu, token)) {
+                        return new ExchangeResult(Status.ConnectionLost);
+                    }
+                    return createResult();
+                }
+            } finally {
+                mScheduler.release();
+            }
+        };
+        if (mScheduler.isHeldByCurrentThread()) {
+            // nested call from listener: in-flight leader may wait for device we hold
+            return exchange.exchange();
         }
+        return mCoalescer.execute(command, payload, priority, token, exchange);
+    }
 
-        if (commandTag != 0x05) {
-            throw new IOException("Response has invalid command id");
+    /**
+     * Same as {@link #transceive}, but repeats command by {@link #mRetryPolicy}. Next attempt drains
+     * answer of failed one, if it came during backoff. Must be called under {@link #mExchangeLock}
+     */
+    private boolean transceiveRetrying(Command command, APDU apdu, @Nullable CancellationToken token) throws IOException {
+        final long deadline = token != null ? token.getDeadlineNanos() : Long.MAX_VALUE;
+        for (int attempt = 1; ; attempt++) {
+            final boolean written;
+            try {
+                written = transceive(command, apdu, token);
+            } catch (IOException e) {
+                if (!isReady()) {
+                    throw e;
+                }
+                final long delay = mRetryPolicy.onFailure(command, e, attempt, deadline);
+                if (delay < 0) {
+                    throw e;
+                }
+                Timber.d("Retrying %s after %s, attempt %d", command, e.getClass().getSimpleName(), attempt + 1);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                continue;
+            }
+            if (written) {
+                mRetryPolicy.onSuccess(command, attempt);
+            }
+            return written;
         }
+    }
 
-        seqn++;
+    /**
+     * Writes command and reads whole response into {@link #mFrameDecoder}. Must be called under {@link #mExchangeLock}
+     * @return false if connection has been lost while writing
+     */
+    private boolean transceive(Command command, APDU apdu, @Nullable CancellationToken token) throws IOException {
+        final LedgerMetrics metrics = mMetrics;
+        final long startedAt = metrics != null ? System.nanoTime() : 0;
+        long writtenAt = 0, firstFrameAt = 0, lastFrameAt = 0;
+        int frames = 0;
+        boolean written = false, completed = false;
+        Status status = Status.Unknown;
+        // read once: disconnect() drops it from another thread
+        final LedgerIO io = mLedgerIO;
+        final Runnable onCancel = io != null ? io::cancelRead : null;
 
-        Timber.d("Needs to read more data? (%d * %d) < %d", seqn, 64, commonDataLen);
+        try {
+            if (token != null) {
+                token.throwIfCanceled();
+            }
+            if (io == null) {
+                status = Status.ConnectionLost;
+                return false;
+            }
+            if (mDrainPending.getAndSet(false)) {
+                drainStaleFrames(io);
+            }
+            final int channel = nextChannel();
+            try {
+                write(apdu, channel);
+            } catch (ConnectionException e) {
+                status = Status.ConnectionLost;
+                return false;
+            }
+            written = true;
+            writtenAt = System.nanoTime();
+            final long deadline = getDeadline(command, token, writtenAt);
 
-        while ((seqn * 64) < commonDataLen) {
-            mLedgerIO.readWait(buf, READ_TIMEOUT_SECONDS);
-            seqn++;
-            Timber.d("Read frame[%d:%d]: %s", seqn, 64, dumpData(buf));
-            Timber.d("Needs to read more data? (%d * %d) < %d", seqn, 64, commonDataLen);
-            offset += buf.length;
+            if (token != null) {
+                token.setOnCancel(onCancel);
+            }
 
-            buffer.write(offset, buf);
+            mFrameDecoder.reset(channel);
+            boolean complete = false;
+            do {
+                int len = io.readWaitUntil(mFrameBuffer, deadline, token);
+                final int frameChannel = HidFrameDecoder.getChannel(mFrameBuffer, len);
+                if (frameChannel != channel) {
+                    // late answer to abandoned command
+                    mDroppedFrames.incrementAndGet();
+                    Timber.d("Dropped frame of channel %d, expected %d", frameChannel, channel);
+                    continue;
+                }
+                if (metrics != null && frames == 0) {
+                    firstFrameAt = System.nanoTime();
+                }
+                frames++;
+                if (mFrameTracer.isEnabled()) {
+                    mFrameTracer.traceRead(mFrameDecoder.getFrameCount(), mFrameBuffer, len);
+                }
+                complete = mFrameDecoder.feed(mFrameBuffer, len);
+            } while (!complete);
+
+            lastFrameAt = System.nanoTime();
+            mTimeline.mark(ConnectionTimeline.Stage.FirstResponse);
+            status = mFrameDecoder.hasStatus() ? Status.findByValue((short) mFrameDecoder.getStatusCode()) : Status.Unknown;
+            if (status == Status.Ok) {
+                // fast error replies would shorten adaptive deadline of real work
+                mReadDeadlines.record(command, lastFrameAt - writtenAt);
+            }
+            completed = true;
+            return true;
+        } catch (CanceledException e) {
+            status = Status.Canceled;
+            throw e;
+        } catch (ReadTimeoutException e) {
+            status = Status.ReadTimeout;
+            throw e;
+        } catch (ConnectionException e) {
+            status = Status.ConnectionLost;
+            throw e;
+        } catch (IOException e) {
+            status = Status.CommonIOError;
+            throw e;
+        } finally {
+            if (written && !completed) {
+                // device may be just slow, answer will come later
+                mDrainPending.set(true);
+            }
+            if (token != null) {
+                token.removeOnCancel(onCancel);
+            }
+            if (metrics != null) {
+                metrics.record(command, status, frames, startedAt, writtenAt, firstFrameAt, lastFrameAt);
+            }
+        }
+    }
 
+    private long getDeadline(Command command, @Nullable CancellationToken token, long writtenAt) {
+        final long timeout = mReadDeadlines.getDeadline(command);
+        long deadline = timeout == ReadDeadlines.INFINITE || timeout >= Long.MAX_VALUE - writtenAt
+                ? Long.MAX_VALUE
+                : writtenAt + timeout;
+        if (token != null) {
+            deadline = Math.min(deadline, token.getDeadlineNanos());
         }
+        return deadline;
+    }
 
-        BytesData resp = new BytesData(seqn * 64 - (seqn * 5));
-        for (int i = 0; i < seqn; i++) {
-            resp.write(i * 59, buffer.takeRange((i * 64) + 5, 64 + (i * 64)));
+    /**
+     * Drops answers to abandoned commands that have been already received. Answers that come later
+     * are dropped by channel id while reading
+     */
+    private void drainStaleFrames(LedgerIO io) throws IOException {
+        final int drained;
+        try {
+            drained = io.drain();
+        } catch (IOException e) {
+            mDrainPending.set(true);
+            throw e;
+        }
+        if (drained > 0) {
+            mDroppedFrames.addAndGet(drained);
+            Timber.d("Drained %d stale frames", drained);
         }
+    }
 
+    private ExchangeResult createResult() {
         ExchangeResult result = new ExchangeResult();
-
-        if (resp.size() >= 2) {
-            //2 bytes - len, N data, 2 bytes status, length prefix does not include 2 bytes of status code
-            short dataLen = (short) (resp.toUShortBigInt(0).shortValue() + 2);
-
-            BytesData rawResp = new BytesData(resp.takeRangeTo(dataLen));
-            BytesData statusResp = new BytesData(rawResp.takeRange(dataLen - 2, dataLen));
-
-            result.status = Status.findByValue(statusResp.toUShortBigInt(0).shortValue());
-            result.data = new BytesData(rawResp.takeRange(2, dataLen - 2));
+        if (mFrameDecoder.hasStatus()) {
+            result.status = Status.findByValue((short) mFrameDecoder.getStatusCode());
+            result.data = new BytesData(mFrameDecoder.copyData());
         } else {
             result.data = new BytesData(0);
             result.status = Status.Unknown;
@@ -262,30 +867,33 @@ public class MinterLedger extends LedgerNanoS {
         return result;
     }
 
-    private String dumpData(byte[] data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < data.length; i++) {
-            sb.append(StringHelper.bytesToHexString(new byte[]{data[i]}));
-            if (i < data.length - 1) {
-                sb.append(" ");
-            }
-        }
-        sb.append("]");
-        return sb.toString();
+    private static void writeIndex(byte[] out, int offset, int deriveIndex) {
+        out[offset] = (byte) ((deriveIndex >> 24) & 0xFF);
+        out[offset + 1] = (byte) ((deriveIndex >> 16) & 0xFF);
+        out[offset + 2] = (byte) ((deriveIndex >> 8) & 0xFF);
+        out[offset + 3] = (byte) (deriveIndex & 0xFF);
+    }
+
+    public interface SignProgressListener {
+        /**
+         * @param position index of signed request
+         * @param total number of requests
+         * @param signature result
+         */
+        void onProgress(int position, int total, SignatureSingleData signature);
     }
 
-    private void dumpData(BytesData data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < data.size(); i++) {
-            sb.append(StringHelper.bytesToHexString(new byte[]{(byte) data.at(i)}));
-            if (i < data.size() - 1) {
-                sb.append(" ");
+    public static class SignRequest {
+        public final int deriveIndex;
+        public final BytesData hash;
+
+        public SignRequest(int deriveIndex, BytesData hash) {
+            if (hash.size() != 32) {
+                throw new IllegalArgumentException("Transaction hash must have exact 32 bytes");
             }
+            this.deriveIndex = deriveIndex;
+            this.hash = hash;
         }
-        sb.append(" ");
-        Timber.d("Response[%d]: %s", data.size(), sb.toString());
     }
 
     public static class ExchangeResult {
@@ -299,5 +907,10 @@ public class MinterLedger extends LedgerNanoS {
             status = s;
             data = new BytesData(0);
         }
+
+        public ExchangeResult(ExchangeResult other) {
+            status = other.status;
+            data = other.data == null ? null : new BytesData(other.data);
+        }
     }
 }
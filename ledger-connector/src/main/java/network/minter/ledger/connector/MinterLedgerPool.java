@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.core.util.Pair;
+import network.minter.blockchain.models.operational.SignatureSingleData;
+import network.minter.core.crypto.BytesData;
+import network.minter.core.crypto.MinterAddress;
+import network.minter.ledger.connector.exceptions.ResponseException;
+import timber.log.Timber;
+
+/**
+ * Opens every attached Nano S and dispatches requests to the least loaded ready device.
+ * All devices in pool are expected to be initialized with the same seed.
+ */
+public class MinterLedgerPool {
+    private final WeakReference<Context> mContext;
+    private final WeakReference<UsbManager> mUsbManager;
+    private final List<Slot> mSlots = new CopyOnWriteArrayList<>();
+    private final LedgerMetrics mMetrics = new LedgerMetrics();
+    private PoolListener mListener;
+
+    public MinterLedgerPool(Context context, UsbManager manager) {
+        mContext = new WeakReference<>(context);
+        mUsbManager = new WeakReference<>(manager);
+    }
+
+    public void setListener(PoolListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Opens newly attached devices and continues initialization of not ready ones.
+     * Like {@link LedgerNanoS#search()}, should be called until all devices become ready.
+     * @return number of known devices
+     */
+    public synchronized int search() {
+        if (mContext.get() == null || mUsbManager.get() == null) {
+            return 0;
+        }
+
+        for (UsbDevice usbDevice : LedgerNanoS.findDevices(mUsbManager.get())) {
+            if (findSlot(usbDevice) == null) {
+                Timber.d("Pool: new device %s", usbDevice.getDeviceName());
+                mSlots.add(createSlot(usbDevice));
+            }
+        }
+
+        for (Slot slot : mSlots) {
+            slot.ledger.search();
+        }
+
+        return mSlots.size();
+    }
+
+    /**
+     * @return metrics of all pool devices together
+     */
+    public LedgerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public List<MinterLedger> getDevices() {
+        final List<MinterLedger> out = new ArrayList<>(mSlots.size());
+        for (Slot slot : mSlots) {
+            out.add(slot.ledger);
+        }
+        return out;
+    }
+
+    public int getReadyCount() {
+        int count = 0;
+        for (Slot slot : mSlots) {
+            if (slot.ledger.isReady()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Runs call on the least loaded ready device
+     * @throws ResponseException with {@link MinterLedger.Status#ConnectionLost} if there is no ready device
+     */
+    public <T> T execute(Call<T> call) throws ResponseException {
+        final Slot slot = acquire();
+        try {
+            return call.call(slot.ledger);
+        } finally {
+            slot.pending.decrementAndGet();
+        }
+    }
+
+    public Pair<MinterLedger.Status, MinterAddress> getAddress(int deriveIndex, boolean silent) throws ResponseException {
+        return execute(dev -> dev.getAddress(deriveIndex, silent));
+    }
+
+    public Pair<MinterLedger.Status, SignatureSingleData> signTxHash(int deriveIndex, BytesData unsignedTxHash) throws ResponseException {
+        return execute(dev -> dev.signTxHash(deriveIndex, unsignedTxHash));
+    }
+
+    public void destroy() {
+        final List<Slot> slots = new ArrayList<>(mSlots);
+        mSlots.clear();
+        for (Slot slot : slots) {
+            slot.ledger.destroy();
+        }
+    }
+
+    private synchronized Slot acquire() throws ResponseException {
+        Slot best = null;
+        for (Slot slot : mSlots) {
+            if (!slot.ledger.isReady()) {
+                continue;
+            }
+            if (best == null || slot.pending.get() < best.pending.get()) {
+                best = slot;
+            }
+        }
+
+        if (best == null) {
+            throw new ResponseException(MinterLedger.Status.ConnectionLost);
+        }
+        best.pending.incrementAndGet();
+        return best;
+    }
+
+    private Slot findSlot(UsbDevice usbDevice) {
+        for (Slot slot : mSlots) {
+            if (slot.name.equals(usbDevice.getDeviceName())) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private Slot createSlot(UsbDevice usbDevice) {
+        final Slot slot = new Slot(usbDevice.getDeviceName(), new MinterLedger(mContext.get(), mUsbManager.get(), usbDevice));
+        slot.ledger.setMetrics(mMetrics);
+        slot.ledger.setDeviceListener(new LedgerNanoS.DeviceListener() {
+            @Override
+            public void onDeviceReady() {
+                if (mListener != null) {
+                    mListener.onDeviceReady(slot.ledger);
+                }
+            }
+
+            @Override
+            public void onDisconnected() {
+                if (!mSlots.remove(slot)) {
+                    return;
+                }
+                Timber.d("Pool: device %s disconnected", slot.name);
+                slot.ledger.destroy();
+                if (mListener != null) {
+                    mListener.onDisconnected(slot.ledger);
+                }
+            }
+
+            @Override
+            public void onError(int code, Throwable t) {
+                if (mListener != null) {
+                    mListener.onError(slot.ledger, code, t);
+                }
+            }
+        });
+        return slot;
+    }
+
+    public interface Call<T> {
+        T call(MinterLedger device) throws ResponseException;
+    }
+
+    public interface PoolListener {
+        void onDeviceReady(MinterLedger device);
+        void onDisconnected(MinterLedger device);
+        void onError(MinterLedger device, int code, Throwable t);
+    }
+
+    private static final class Slot {
+        final String name;
+        final MinterLedger ledger;
+        final AtomicInteger pending = new AtomicInteger(0);
+
+        Slot(String name, MinterLedger ledger) {
+            this.name = name;
+            this.ledger = ledger;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Per-command response deadlines. Commands confirmed by user on device wait long, silent ones fail fast.
+ * In adaptive mode silent commands wait {@link #ADAPTIVE_MULTIPLIER} times their observed 99th percentile
+ * response time, but not less than adaptive floor and not more than configured timeout.
+ * Deadline covers whole response: from request written to last frame read.
+ * Percentile is recomputed every {@link #ADAPTIVE_UPDATE_SAMPLES} responses, not on each deadline lookup.
+ */
+public final class ReadDeadlines {
+    public final static long INFINITE = -1;
+    public final static int ADAPTIVE_MIN_SAMPLES = 16;
+    public final static int ADAPTIVE_MULTIPLIER = 4;
+    public final static int ADAPTIVE_UPDATE_SAMPLES = 16;
+    private final static long NOT_LEARNED = -1;
+    private final static MinterLedger.Command[] COMMANDS = MinterLedger.Command.values();
+    private final static long DEFAULT_SILENT_MS = 2_000;
+    private final static long DEFAULT_CONFIRMED_MS = 5 * 60_000;
+    private final static long DEFAULT_ADAPTIVE_FLOOR_MS = 100;
+
+    private final long[] mTimeoutNanos = new long[COMMANDS.length];
+    private final LatencyHistogram[] mResponseTimes = new LatencyHistogram[COMMANDS.length];
+    private final AtomicLongArray mLearnedNanos = new AtomicLongArray(COMMANDS.length);
+    private final AtomicLongArray mLearnedAtCount = new AtomicLongArray(COMMANDS.length);
+    private volatile boolean mAdaptive = false;
+    private volatile long mAdaptiveFloorNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_ADAPTIVE_FLOOR_MS);
+
+    public ReadDeadlines() {
+        for (MinterLedger.Command command : COMMANDS) {
+            final long ms = isConfirmed(command) ? DEFAULT_CONFIRMED_MS : DEFAULT_SILENT_MS;
+            mTimeoutNanos[command.ordinal()] = TimeUnit.MILLISECONDS.toNanos(ms);
+            mResponseTimes[command.ordinal()] = new LatencyHistogram();
+            mLearnedNanos.set(command.ordinal(), NOT_LEARNED);
+        }
+    }
+
+    /**
+     * @return true if command waits for user on device, so its response time can't be learned
+     */
+    public static boolean isConfirmed(MinterLedger.Command command) {
+        return command == MinterLedger.Command.SignHash || command == MinterLedger.Command.GetAddress;
+    }
+
+    /**
+     * @param timeout max response time, {@link #INFINITE} to wait forever
+     */
+    public synchronized void setTimeout(@NonNull MinterLedger.Command command, long timeout, @NonNull TimeUnit unit) {
+        mTimeoutNanos[command.ordinal()] = timeout < 0 ? INFINITE : unit.toNanos(timeout);
+    }
+
+    /**
+     * @return configured timeout in nanoseconds, or {@link #INFINITE}
+     */
+    public synchronized long getTimeout(@NonNull MinterLedger.Command command) {
+        return mTimeoutNanos[command.ordinal()];
+    }
+
+    /**
+     * Learn response times of silent commands and shorten their deadlines. Disabled by default
+     */
+    public void setAdaptive(boolean adaptive) {
+        mAdaptive = adaptive;
+    }
+
+    public boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    /**
+     * @param floor adaptive deadline is never shorter than this
+     */
+    public void setAdaptiveFloor(long floor, @NonNull TimeUnit unit) {
+        mAdaptiveFloorNanos = unit.toNanos(floor);
+    }
+
+    /**
+     * @return observed response times, recorded for successful exchanges only
+     */
+    public LatencyHistogram getResponseTimes(@NonNull MinterLedger.Command command) {
+        return mResponseTimes[command.ordinal()];
+    }
+
+    /**
+     * @return effective deadline in nanoseconds, or {@link #INFINITE}
+     */
+    public long getDeadline(@NonNull MinterLedger.Command command) {
+        final long timeout = getTimeout(command);
+        if (!mAdaptive || isConfirmed(command)) {
+            return timeout;
+        }
+        final long p99 = mLearnedNanos.get(command.ordinal());
+        if (p99 == NOT_LEARNED) {
+            return timeout;
+        }
+        final long learned = Math.max(mAdaptiveFloorNanos, p99 * ADAPTIVE_MULTIPLIER);
+        return timeout == INFINITE ? learned : Math.min(timeout, learned);
+    }
+
+    public void resetResponseTimes() {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            mResponseTimes[i].reset();
+            mLearnedNanos.set(i, NOT_LEARNED);
+            mLearnedAtCount.set(i, 0);
+        }
+    }
+
+    /**
+     * @param responseNanos response time of exchange completed with Ok status
+     */
+    void record(MinterLedger.Command command, long responseNanos) {
+        if (isConfirmed(command)) {
+            return;
+        }
+        final int i = command.ordinal();
+        final LatencyHistogram times = mResponseTimes[i];
+        times.record(responseNanos);
+
+        final long count = times.getCount();
+        final long learnedAt = mLearnedAtCount.get(i);
+        if (count < ADAPTIVE_MIN_SAMPLES) {
+            return;
+        }
+        // count is lower if histogram has been reset directly
+        if ((count - learnedAt >= ADAPTIVE_UPDATE_SAMPLES || count < learnedAt || mLearnedNanos.get(i) == NOT_LEARNED)
+                && mLearnedAtCount.compareAndSet(i, learnedAt, count)) {
+            mLearnedNanos.set(i, times.getValueAtPercentile(99));
+        }
+    }
+}
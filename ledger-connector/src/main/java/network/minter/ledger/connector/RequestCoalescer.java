@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import network.minter.ledger.connector.exceptions.CanceledException;
+import network.minter.ledger.connector.exceptions.DeviceBusyException;
+import network.minter.ledger.connector.exceptions.ReadTimeoutException;
+
+/**
+ * Shares one device exchange between concurrent identical requests. Only idempotent commands
+ * are coalesced: {@link MinterLedger.Command#GetVersion} and {@link MinterLedger.Command#GetAddressSilent}.
+ * Request that arrives while the same (command, payload, priority) is in flight waits for its result
+ * instead of queueing another exchange. Each caller gets own copy of {@link MinterLedger.ExchangeResult}.
+ * Requests of different priorities are not shared, so interactive call never waits behind background queue.
+ */
+public final class RequestCoalescer {
+    private final static MinterLedger.Command[] COMMANDS = MinterLedger.Command.values();
+
+    private final ConcurrentHashMap<Key, InFlight> mInFlight = new ConcurrentHashMap<>();
+    private final AtomicLongArray mRequests = new AtomicLongArray(COMMANDS.length);
+    private final AtomicLongArray mShared = new AtomicLongArray(COMMANDS.length);
+    private volatile boolean mEnabled = true;
+
+    interface Exchange {
+        MinterLedger.ExchangeResult exchange() throws IOException;
+    }
+
+    public static boolean isIdempotent(MinterLedger.Command command) {
+        return command == MinterLedger.Command.GetVersion || command == MinterLedger.Command.GetAddressSilent;
+    }
+
+    /**
+     * Enabled by default. Disabling does not affect requests already in flight
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Whether request can be coalesced
+     */
+    public boolean accepts(MinterLedger.Command command) {
+        return mEnabled && isIdempotent(command);
+    }
+
+    /**
+     * @return coalescable requests, including shared ones
+     */
+    public long getRequestCount(MinterLedger.Command command) {
+        return mRequests.get(command.ordinal());
+    }
+
+    /**
+     * @return requests, that got result of another in-flight exchange
+     */
+    public long getSharedCount(MinterLedger.Command command) {
+        return mShared.get(command.ordinal());
+    }
+
+    public long getRequestCount() {
+        long out = 0;
+        for (int i = 0; i < mRequests.length(); i++) {
+            out += mRequests.get(i);
+        }
+        return out;
+    }
+
+    public long getSharedCount() {
+        long out = 0;
+        for (int i = 0; i < mShared.length(); i++) {
+            out += mShared.get(i);
+        }
+        return out;
+    }
+
+    /**
+     * @return shared requests to all coalescable requests, 0 if there were none
+     */
+    public double getHitRate() {
+        final long requests = getRequestCount();
+        return requests == 0 ? 0 : (double) getSharedCount() / requests;
+    }
+
+    public void reset() {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            mRequests.set(i, 0);
+            mShared.set(i, 0);
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "RequestCoalescer{requests=%d, shared=%d, hitRate=%.2f}",
+                getRequestCount(), getSharedCount(), getHitRate());
+    }
+
+    /**
+     * Runs exchange, or joins the same one in flight. If leading request has failed for own reasons
+     * (canceled, rejected by scheduler or out of its deadline), waiting requests run their own exchange.
+     * @param token cancels only waiting of this caller, not the shared exchange. Its deadline limits the wait too
+     */
+    MinterLedger.ExchangeResult execute(MinterLedger.Command command, @Nullable byte[] payload, ExchangeScheduler.Priority priority,
+                                        @Nullable CancellationToken token, Exchange exchange) throws IOException {
+        if (!accepts(command)) {
+            return exchange.exchange();
+        }
+
+        final Key key = new Key(command, payload, priority);
+        mRequests.incrementAndGet(command.ordinal());
+        boolean counted = false;
+        while (true) {
+            final InFlight own = new InFlight();
+            final InFlight leader = mInFlight.putIfAbsent(key, own);
+            if (leader == null) {
+                try {
+                    final MinterLedger.ExchangeResult result = exchange.exchange();
+                    // followers copy from snapshot, leader's caller owns the result
+                    own.complete(new MinterLedger.ExchangeResult(result), null);
+                    return result;
+                } catch (IOException | RuntimeException e) {
+                    own.complete(null, e);
+                    throw e;
+                } finally {
+                    mInFlight.remove(key, own);
+                }
+            }
+
+            if (!counted) {
+                mShared.incrementAndGet(command.ordinal());
+                counted = true;
+            }
+            final MinterLedger.ExchangeResult result = leader.await(token);
+            if (result != null) {
+                return new MinterLedger.ExchangeResult(result);
+            }
+        }
+    }
+
+    private final static class InFlight {
+        private boolean mDone = false;
+        private MinterLedger.ExchangeResult mResult;
+        private Exception mError;
+
+        synchronized void complete(MinterLedger.ExchangeResult result, Exception error) {
+            mResult = result;
+            mError = error;
+            mDone = true;
+            notifyAll();
+        }
+
+        /**
+         * @return result, or null if leader has failed for own reasons, see {@link #isLeaderFailure(Exception)}
+         */
+        MinterLedger.ExchangeResult await(@Nullable CancellationToken token) throws IOException {
+            final Runnable onCancel = this::wakeUp;
+            if (token != null) {
+                token.setOnCancel(onCancel);
+            }
+            try {
+                synchronized (this) {
+                    while (!mDone) {
+                        if (token != null) {
+                            token.throwIfCanceled();
+                        }
+                        final long deadline = token != null ? token.getDeadlineNanos() : Long.MAX_VALUE;
+                        try {
+                            if (deadline == Long.MAX_VALUE) {
+                                wait();
+                            } else {
+                                final long left = deadline - System.nanoTime();
+                                if (left <= 0) {
+                                    throw new ReadTimeoutException();
+                                }
+                                TimeUnit.NANOSECONDS.timedWait(this, left);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new CanceledException("Interrupted");
+                        }
+                    }
+                }
+            } finally {
+                if (token != null) {
+                    token.removeOnCancel(onCancel);
+                }
+            }
+
+            if (isLeaderFailure(mError)) {
+                return null;
+            } else if (mError instanceof IOException) {
+                throw (IOException) mError;
+            } else if (mError != null) {
+                throw (RuntimeException) mError;
+            }
+            return mResult;
+        }
+
+        private synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        /**
+         * Errors caused by leader's token or queue, not by device, that followers may not get
+         */
+        private static boolean isLeaderFailure(Exception e) {
+            return e instanceof CanceledException || e instanceof DeviceBusyException || e instanceof ReadTimeoutException;
+        }
+    }
+
+    /**
+     * Request identity: command, payload bytes and priority
+     */
+    final static class Key {
+        private final MinterLedger.Command mCommand;
+        private final byte[] mPayload;
+        private final ExchangeScheduler.Priority mPriority;
+        private final int mHash;
+
+        Key(@NonNull MinterLedger.Command command, @Nullable byte[] payload, @NonNull ExchangeScheduler.Priority priority) {
+            mCommand = command;
+            mPayload = payload == null ? new byte[0] : payload.clone();
+            mPriority = priority;
+            mHash = 31 * (31 * command.hashCode() + priority.hashCode()) + Arrays.hashCode(mPayload);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mCommand == other.mCommand && mPriority == other.mPriority && Arrays.equals(mPayload, other.mPayload);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+import network.minter.ledger.connector.exceptions.ConnectionException;
+import network.minter.ledger.connector.exceptions.ReadTimeoutException;
+
+/**
+ * Repeats idempotent commands ({@link RequestCoalescer#isIdempotent}), that failed with transient
+ * {@link ConnectionException} or {@link ReadTimeoutException}. Commands confirmed by user on device are never repeated.
+ * Before next attempt handle waits jittered exponential backoff and drains stale frames of failed one.
+ * Retries are limited by budget: each retry takes one from it, and every {@link #BUDGET_REFILL_CALLS}
+ * successful exchanges return one back, so failing device can't be flooded with repeats.
+ */
+public final class RetryPolicy {
+    public final static int DEFAULT_MAX_ATTEMPTS = 3;
+    public final static int DEFAULT_BUDGET = 10;
+    public final static int BUDGET_REFILL_CALLS = 10;
+    private final static MinterLedger.Command[] COMMANDS = MinterLedger.Command.values();
+    private final static long DEFAULT_BASE_DELAY_MS = 10;
+    private final static long DEFAULT_MAX_DELAY_MS = 200;
+
+    private final Random mRandom = new Random();
+    private final AtomicLongArray mRetries = new AtomicLongArray(COMMANDS.length);
+    private final AtomicLongArray mRecovered = new AtomicLongArray(COMMANDS.length);
+    private final AtomicLongArray mExhausted = new AtomicLongArray(COMMANDS.length);
+    private volatile boolean mEnabled = true;
+    private volatile int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long mBaseDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BASE_DELAY_MS);
+    private volatile long mMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY_MS);
+    // in successful calls, one retry costs BUDGET_REFILL_CALLS
+    private int mBudgetCapacity = DEFAULT_BUDGET * BUDGET_REFILL_CALLS;
+    private int mBudget = mBudgetCapacity;
+
+    /**
+     * @return true if command can be sent again without user involvement and side effects
+     */
+    public static boolean isRetryable(MinterLedger.Command command) {
+        return RequestCoalescer.isIdempotent(command) && !ReadDeadlines.isConfirmed(command);
+    }
+
+    /**
+     * @return true if failure may go away on next attempt
+     */
+    public static boolean isTransient(IOException e) {
+        return e instanceof ConnectionException || e instanceof ReadTimeoutException;
+    }
+
+    /**
+     * Enabled by default
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @param attempts max attempts per exchange including first one, 1 disables retries
+     */
+    public void setMaxAttempts(int attempts) {
+        if (attempts < 1) {
+            throw new IllegalArgumentException("Attempts must be positive");
+        }
+        mMaxAttempts = attempts;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * @param baseDelay backoff before first retry, doubles with each next one
+     * @param maxDelay backoff limit
+     */
+    public void setBackoff(long baseDelay, long maxDelay, @NonNull TimeUnit unit) {
+        if (baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException(String.format(Locale.US, "Invalid backoff: %d..%d", baseDelay, maxDelay));
+        }
+        mBaseDelayNanos = unit.toNanos(baseDelay);
+        mMaxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * @param capacity max retries in a row, when device fails all the time
+     */
+    public synchronized void setBudget(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Budget can't be negative");
+        }
+        mBudgetCapacity = capacity * BUDGET_REFILL_CALLS;
+        mBudget = Math.min(mBudget, mBudgetCapacity);
+    }
+
+    /**
+     * @return retries available right now
+     */
+    public synchronized int getBudget() {
+        return mBudget / BUDGET_REFILL_CALLS;
+    }
+
+    /**
+     * Decides whether failed attempt should be repeated and takes retry from budget if so
+     * @param attempt number of failed attempt, starting from 1
+     * @param deadline {@link System#nanoTime()} based call deadline, no retry is made if backoff ends after it
+     * @return backoff in nanoseconds before next attempt, or -1 if failure must be thrown to caller
+     */
+    long onFailure(MinterLedger.Command command, IOException e, int attempt, long deadline) {
+        if (!mEnabled || !isRetryable(command) || !isTransient(e)) {
+            return -1;
+        }
+        final long delay = getBackoff(attempt);
+        if (attempt >= mMaxAttempts || deadline - System.nanoTime() <= delay || !takeBudget()) {
+            mExhausted.incrementAndGet(command.ordinal());
+            return -1;
+        }
+        mRetries.incrementAndGet(command.ordinal());
+        return delay;
+    }
+
+    /**
+     * @param attempt number of successful attempt, starting from 1
+     */
+    void onSuccess(MinterLedger.Command command, int attempt) {
+        if (attempt > 1) {
+            mRecovered.incrementAndGet(command.ordinal());
+        }
+        synchronized (this) {
+            mBudget = Math.min(mBudgetCapacity, mBudget + 1);
+        }
+    }
+
+    /**
+     * Equal jitter: half of exponential delay is fixed, so device always gets time to settle, other half is random
+     */
+    long getBackoff(int attempt) {
+        final long exp = mBaseDelayNanos << Math.min(attempt - 1, 30);
+        final long cap = exp < 0 ? mMaxDelayNanos : Math.min(mMaxDelayNanos, exp);
+        final long half = cap / 2;
+        synchronized (mRandom) {
+            return half + (long) (mRandom.nextDouble() * (cap - half));
+        }
+    }
+
+    private synchronized boolean takeBudget() {
+        if (mBudget < BUDGET_REFILL_CALLS) {
+            return false;
+        }
+        mBudget -= BUDGET_REFILL_CALLS;
+        return true;
+    }
+
+    /**
+     * @return repeated attempts of command
+     */
+    public long getRetryCount(MinterLedger.Command command) {
+        return mRetries.get(command.ordinal());
+    }
+
+    /**
+     * @return exchanges, that failed at first but succeeded after retry
+     */
+    public long getRecoveredCount(MinterLedger.Command command) {
+        return mRecovered.get(command.ordinal());
+    }
+
+    /**
+     * @return transient failures thrown to caller because attempts, budget or deadline had been exhausted
+     */
+    public long getExhaustedCount(MinterLedger.Command command) {
+        return mExhausted.get(command.ordinal());
+    }
+
+    public long getRetryCount() {
+        return sum(mRetries);
+    }
+
+    public long getRecoveredCount() {
+        return sum(mRecovered);
+    }
+
+    public long getExhaustedCount() {
+        return sum(mExhausted);
+    }
+
+    /**
+     * Resets counters, budget is kept
+     */
+    public void resetStats() {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            mRetries.set(i, 0);
+            mRecovered.set(i, 0);
+            mExhausted.set(i, 0);
+        }
+    }
+
+    private static long sum(AtomicLongArray values) {
+        long out = 0;
+        for (int i = 0; i < values.length(); i++) {
+            out += values.get(i);
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "RetryPolicy{retries=%d, recovered=%d, exhausted=%d, budget=%d}",
+                getRetryCount(), getRecoveredCount(), getExhaustedCount(), getBudget());
+    }
+}
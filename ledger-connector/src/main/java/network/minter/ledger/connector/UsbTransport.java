@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbRequest;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import network.minter.ledger.connector.exceptions.ConnectionException;
+import timber.log.Timber;
+
+/**
+ * USB HID transport. Reads IN endpoint with queued {@link UsbRequest} (default), or by bulkTransfer polling.
+ * Since O, request of timed out read stays queued and is reaped by next read or by {@link #close()}.
+ */
+public class UsbTransport implements LedgerTransport {
+    private static final int POLL_TIMEOUT = 1000;
+    // channel id, then tag
+    private static final int TAG_OFFSET = 2;
+    private static ScheduledExecutorService sWatchdog;
+    private final UsbEndpoint mInEndpoint;
+    private final UsbEndpoint mOutEndpoint;
+    private final UsbDeviceConnection mConnection;
+    private final ByteBuffer mRequestBuffer;
+    private final AtomicBoolean mClosed = new AtomicBoolean(false);
+    private final AtomicBoolean mReadCanceled = new AtomicBoolean(false);
+    private volatile UsbRequest mReadRequest;
+    private final ReentrantLock mReaderLock = new ReentrantLock();
+    private volatile boolean mAsyncRead = true;
+    // guarded by mReaderLock
+    private boolean mReadQueued = false;
+
+    public UsbTransport(UsbEndpoint inEndpoint, UsbEndpoint outEndpoint, UsbDeviceConnection connection) {
+        mInEndpoint = inEndpoint;
+        mOutEndpoint = outEndpoint;
+        mConnection = connection;
+        mRequestBuffer = ByteBuffer.allocateDirect(inEndpoint.getMaxPacketSize());
+    }
+
+    private static synchronized ScheduledExecutorService getWatchdog() {
+        if (sWatchdog == null) {
+            sWatchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "UsbTransport-watchdog");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return sWatchdog;
+    }
+
+    /**
+     * Switch between queued {@link UsbRequest} reads (default) and legacy bulkTransfer polling
+     * @param enable true to wake up on frame arrival, false to poll endpoint every second
+     */
+    public void setAsyncRead(boolean enable) {
+        mAsyncRead = enable;
+    }
+
+    public boolean isAsyncRead() {
+        return mAsyncRead;
+    }
+
+    @Override
+    public int getPacketSize() {
+        return mInEndpoint.getMaxPacketSize();
+    }
+
+    @Override
+    public int read(byte[] out, int length, long timeoutMs) throws IOException {
+        mReaderLock.lock();
+        try {
+            return readLocked(out, length, timeoutMs);
+        } finally {
+            mReaderLock.unlock();
+        }
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length, long timeoutMs) throws IOException {
+        if (offset == 0) {
+            return mConnection.bulkTransfer(mOutEndpoint, data, length, (int) timeoutMs);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return mConnection.bulkTransfer(mOutEndpoint, data, offset, length, (int) timeoutMs);
+        }
+        // no offset overload before API 18
+        return mConnection.bulkTransfer(mOutEndpoint, Arrays.copyOfRange(data, offset, offset + length), length, (int) timeoutMs);
+    }
+
+    @Override
+    public void cancelRead() {
+        mReadCanceled.set(true);
+        final UsbRequest request = mReadRequest;
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    @Override
+    public void close() {
+        mClosed.set(true);
+        if (mReaderLock.tryLock()) {
+            // nobody reads, reap request left queued by timed out read
+            try {
+                releaseReadRequest();
+            } finally {
+                mReaderLock.unlock();
+            }
+            return;
+        }
+        final UsbRequest request = mReadRequest;
+        if (request != null) {
+            // wakes up waiting reader, request itself will be released by reader
+            request.cancel();
+        }
+    }
+
+    private int readLocked(byte[] out, int length, long timeoutMs) throws IOException {
+        if (mClosed.get()) {
+            releaseReadRequest();
+            throw new ConnectionException();
+        }
+        if (mReadCanceled.getAndSet(false)) {
+            // request canceled while nobody waited for it is still queued
+            releaseReadRequest();
+            return 0;
+        }
+        if (!mAsyncRead && mReadQueued) {
+            // switched to polling after timed out async read
+            releaseReadRequest();
+        }
+        if (timeoutMs <= 0) {
+            return poll(out, length);
+        }
+        if (!mAsyncRead) {
+            // can't interrupt bulkTransfer, cancel takes up to POLL_TIMEOUT
+            return mConnection.bulkTransfer(mInEndpoint, out, length, (int) Math.min(timeoutMs, POLL_TIMEOUT));
+        }
+
+        final int size = Math.min(length, mRequestBuffer.capacity());
+        final UsbRequest request = getReadRequest();
+        if (!mReadQueued) {
+            mRequestBuffer.clear();
+            final boolean queued;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                mRequestBuffer.limit(size);
+                queued = request.queue(mRequestBuffer);
+            } else {
+                // completed request is told from canceled one by APDU tag, see awaitRequest
+                mRequestBuffer.put(TAG_OFFSET, (byte) 0);
+                //noinspection deprecation
+                queued = request.queue(mRequestBuffer, size);
+            }
+            if (!queued) {
+                releaseReadRequest();
+                throw new ConnectionException();
+            }
+            mReadQueued = true;
+            if (mClosed.get()) {
+                // close() could miss request that has not been queued yet
+                releaseReadRequest();
+                throw new ConnectionException();
+            }
+        }
+
+        if (!awaitRequest(request, timeoutMs)) {
+            return 0;
+        }
+        if (mClosed.get()) {
+            releaseReadRequest();
+            throw new ConnectionException();
+        }
+        if (mReadCanceled.getAndSet(false)) {
+            // canceled request can't be reused
+            releaseReadRequest();
+            return 0;
+        }
+
+        return copyRequestBuffer(out, size);
+    }
+
+    /**
+     * Returns frame that has already arrived without canceling anything, so next read is not affected.
+     * Request left queued by timed out read is only checked, otherwise short bulkTransfer is used,
+     * as requestWait can't poll before O and watchdog cancel could lose the frame
+     */
+    private int poll(byte[] out, int length) throws IOException {
+        if (!mReadQueued) {
+            // for bulkTransfer 0 is infinite timeout
+            return mConnection.bulkTransfer(mInEndpoint, out, length, 1);
+        }
+        if (!awaitRequest(mReadRequest, 1)) {
+            return 0;
+        }
+        if (mClosed.get()) {
+            releaseReadRequest();
+            throw new ConnectionException();
+        }
+        return copyRequestBuffer(out, Math.min(length, mRequestBuffer.capacity()));
+    }
+
+    private int copyRequestBuffer(byte[] out, int size) {
+        // before O, buffer position is not updated, but HID endpoint always sends full frames
+        final int bytesRead = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? mRequestBuffer.position() : size;
+        if (bytesRead > 0) {
+            mRequestBuffer.rewind();
+            mRequestBuffer.get(out, 0, bytesRead);
+        }
+        return bytesRead;
+    }
+
+    /**
+     * On success request is reaped and can be queued again
+     * @return false if deadline is reached. Since O, request stays queued and next read waits for it
+     * instead of queueing new one, otherwise it is canceled and released
+     */
+    private boolean awaitRequest(UsbRequest request, long timeoutMs) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && timeoutMs != Long.MAX_VALUE) {
+            final UsbRequest res;
+            try {
+                res = mConnection.requestWait(timeoutMs);
+            } catch (TimeoutException e) {
+                return false;
+            }
+            if (res != request) {
+                throw new ConnectionException();
+            }
+            mReadQueued = false;
+            return true;
+        }
+
+        final AtomicBoolean expired = new AtomicBoolean(false);
+        ScheduledFuture<?> watchdog = null;
+        if (timeoutMs != Long.MAX_VALUE) {
+            watchdog = getWatchdog().schedule(() -> {
+                expired.set(true);
+                request.cancel();
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        final UsbRequest res = mConnection.requestWait();
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+        if (res != request) {
+            throw new ConnectionException();
+        }
+        mReadQueued = false;
+        // watchdog may fire after request has completed, then cancel does nothing and frame is valid
+        if (expired.get() && mRequestBuffer.get(TAG_OFFSET) != HidFrameEncoder.TAG_APDU) {
+            releaseReadRequest();
+            return false;
+        }
+        return true;
+    }
+
+    private UsbRequest getReadRequest() throws IOException {
+        if (mReadRequest == null) {
+            final UsbRequest request = new UsbRequest();
+            if (!request.initialize(mConnection, mInEndpoint)) {
+                throw new ConnectionException();
+            }
+            mReadRequest = request;
+        }
+        return mReadRequest;
+    }
+
+    /**
+     * Cancels and reaps queued request before closing it, otherwise next requestWait would return it
+     * instead of newly queued one. Must be called by reader
+     */
+    private void releaseReadRequest() {
+        final UsbRequest request = mReadRequest;
+        if (request == null) {
+            return;
+        }
+        mReadRequest = null;
+        if (mReadQueued) {
+            mReadQueued = false;
+            request.cancel();
+            reap(request);
+        }
+        request.close();
+    }
+
+    private void reap(UsbRequest request) {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                mConnection.requestWait(POLL_TIMEOUT);
+            } else {
+                // canceled request completes right away
+                mConnection.requestWait();
+            }
+        } catch (TimeoutException e) {
+            Timber.w("Canceled read request %s has not been reaped", request);
+        }
+    }
+}
@@ -43,6 +43,12 @@ public class ResponseException extends IOException {
         super(cause);
         if (getCause() instanceof ReadTimeoutException) {
             mResult = new MinterLedger.ExchangeResult(MinterLedger.Status.ReadTimeout);
+        } else if (getCause() instanceof CanceledException) {
+            mMessage = getCause().getMessage();
+            mResult = new MinterLedger.ExchangeResult(MinterLedger.Status.Canceled);
+        } else if (getCause() instanceof DeviceBusyException) {
+            mMessage = getCause().getMessage();
+            mResult = new MinterLedger.ExchangeResult(MinterLedger.Status.DeviceBusy);
         } else if (getCause() instanceof ConnectionException) {
             mMessage = "Connection to Nano S lost";
             mResult = new MinterLedger.ExchangeResult(MinterLedger.Status.ConnectionLost);
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import network.minter.core.crypto.MinterAddress;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AddressCacheTest {
+    private File mFile;
+
+    private static byte[] record(int seed) {
+        byte[] out = new byte[20];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) (seed * 31 + i + 1);
+        }
+        return out;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("addr-cache", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void persistsBetweenSessions() throws IOException {
+        AddressCache cache = new AddressCache(mFile, 100, 10);
+        cache.bind(record(0));
+        cache.put(5, new MinterAddress(record(5)));
+        cache.put(99, new MinterAddress(record(99)));
+        cache.close();
+
+        AddressCache reopened = new AddressCache(mFile, 100, 10);
+        reopened.bind(record(0));
+        MinterAddress addr = reopened.get(5);
+        assertNotNull(addr);
+        assertArrayEquals(record(5), addr.getData());
+        assertArrayEquals(record(99), reopened.get(99).getData());
+        assertNull(reopened.get(6));
+        reopened.close();
+    }
+
+    @Test
+    public void otherFingerprintClearsRecords() throws IOException {
+        AddressCache cache = new AddressCache(mFile, 100, 10);
+        cache.bind(record(0));
+        cache.put(1, new MinterAddress(record(1)));
+        cache.close();
+
+        AddressCache other = new AddressCache(mFile, 100, 10);
+        other.bind(record(1000));
+        assertNull(other.get(1));
+        other.close();
+    }
+
+    @Test
+    public void interruptedRebindKeepsNoRecords() throws IOException {
+        AddressCache cache = new AddressCache(mFile, 100, 10);
+        cache.bind(record(0));
+        cache.put(1, new MinterAddress(record(1)));
+        // process dies while rebinding to other seed: records are wiped, header isn't written yet
+        cache.clearRecords();
+        cache.close();
+
+        AddressCache other = new AddressCache(mFile, 100, 10);
+        other.bind(record(1000));
+        assertNull(other.get(1));
+        other.close();
+
+        AddressCache previous = new AddressCache(mFile, 100, 10);
+        previous.bind(record(0));
+        assertNull(previous.get(1));
+        previous.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnmappableMaxIndex() {
+        new AddressCache(mFile, AddressCache.MAX_PERSISTED_INDEX + 1, 10);
+    }
+
+    @Test
+    public void indexesOutOfFileKeptInMemory() throws IOException {
+        AddressCache cache = new AddressCache(mFile, 4, 2);
+        cache.bind(record(0));
+        cache.put(10, new MinterAddress(record(10)));
+        assertArrayEquals(record(10), cache.get(10).getData());
+
+        // evicts index 10 from memory, and it isn't persisted
+        cache.put(11, new MinterAddress(record(11)));
+        cache.put(12, new MinterAddress(record(12)));
+        assertNull(cache.get(10));
+        assertEquals(4 * 20 + 28, mFile.length());
+        cache.close();
+    }
+
+    @Test
+    public void unboundCacheIsEmpty() {
+        AddressCache cache = new AddressCache(mFile, 4, 2);
+        cache.put(1, new MinterAddress(record(1)));
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void invalidate() throws IOException {
+        AddressCache cache = new AddressCache(mFile, 4, 2);
+        cache.bind(record(0));
+        cache.put(1, new MinterAddress(record(1)));
+        cache.invalidate();
+        cache.bind(record(0));
+        assertNull(cache.get(1));
+        cache.close();
+    }
+}
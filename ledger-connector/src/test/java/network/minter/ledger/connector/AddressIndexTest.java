@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class AddressIndexTest {
+
+    private static byte[][] randomAddresses(int count, long seed) {
+        Random rnd = new Random(seed);
+        byte[][] out = new byte[count][20];
+        for (byte[] a : out) {
+            rnd.nextBytes(a);
+        }
+        return out;
+    }
+
+    @Test
+    public void putAndLookup() {
+        byte[][] addresses = randomAddresses(10_000, 1);
+        AddressIndex index = new AddressIndex();
+        for (int i = 0; i < addresses.length; i++) {
+            index.put(addresses[i], i);
+        }
+
+        assertEquals(addresses.length, index.size());
+        for (int i = 0; i < addresses.length; i++) {
+            assertEquals(i, index.indexOf(addresses[i]));
+        }
+    }
+
+    @Test
+    public void missesReturnNotFound() {
+        AddressIndex index = new AddressIndex(1000);
+        for (byte[] a : randomAddresses(1000, 2)) {
+            index.put(a, 1);
+        }
+        for (byte[] a : randomAddresses(1000, 3)) {
+            assertEquals(AddressIndex.NOT_FOUND, index.indexOf(a));
+        }
+    }
+
+    @Test
+    public void overwriteKeepsSize() {
+        byte[] addr = randomAddresses(1, 4)[0];
+        AddressIndex index = new AddressIndex();
+        index.put(addr, 1);
+        index.put(addr, 7);
+        assertEquals(1, index.size());
+        assertEquals(7, index.indexOf(addr));
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        byte[][] addresses = randomAddresses(500, 5);
+        AddressIndex index = new AddressIndex();
+        for (int i = 0; i < addresses.length; i++) {
+            index.put(addresses[i], i * 2);
+        }
+
+        File file = File.createTempFile("addr-index", ".bin");
+        try {
+            index.save(file);
+            AddressIndex loaded = AddressIndex.load(file);
+            assertEquals(addresses.length, loaded.size());
+            for (int i = 0; i < addresses.length; i++) {
+                assertEquals(i * 2, loaded.indexOf(addresses[i]));
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidKeyLength() {
+        new AddressIndex().indexOf(new byte[19]);
+    }
+}
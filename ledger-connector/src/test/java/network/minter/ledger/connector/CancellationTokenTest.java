@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void removedCallbackIsNotRun() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        Runnable onCancel = calls::incrementAndGet;
+
+        token.setOnCancel(onCancel);
+        assertTrue(token.removeOnCancel(onCancel));
+        token.cancel();
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void callbackRunsOnce() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        Runnable onCancel = calls::incrementAndGet;
+
+        token.setOnCancel(onCancel);
+        token.cancel();
+        token.cancel();
+        assertEquals(1, calls.get());
+        // already taken by cancel
+        assertFalse(token.removeOnCancel(onCancel));
+
+        // canceled token runs new callback right away
+        token.setOnCancel(onCancel);
+        assertEquals(2, calls.get());
+        assertFalse(token.removeOnCancel(onCancel));
+    }
+
+    @Test
+    public void staleRemoveKeepsNewCallback() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        Runnable onFirst = first::incrementAndGet;
+
+        token.setOnCancel(onFirst);
+        token.setOnCancel(second::incrementAndGet);
+        assertFalse(token.removeOnCancel(onFirst));
+        token.cancel();
+        assertEquals(0, first.get());
+        assertEquals(1, second.get());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionTimelineTest {
+
+    @Test
+    public void marksOnce() throws InterruptedException {
+        ConnectionTimeline timeline = new ConnectionTimeline();
+        assertEquals(-1, timeline.getElapsed(ConnectionTimeline.Stage.Search));
+        assertEquals("", timeline.toString());
+
+        assertTrue(timeline.mark(ConnectionTimeline.Stage.Search));
+        Thread.sleep(5);
+        assertFalse(timeline.mark(ConnectionTimeline.Stage.Search));
+        assertEquals(0, timeline.getElapsed(ConnectionTimeline.Stage.Search));
+
+        timeline.mark(ConnectionTimeline.Stage.DeviceFound);
+        timeline.mark(ConnectionTimeline.Stage.PermissionGranted);
+        timeline.mark(ConnectionTimeline.Stage.Ready);
+
+        assertTrue(timeline.getElapsed(ConnectionTimeline.Stage.DeviceFound) >= 5_000_000);
+        assertFalse(timeline.isReached(ConnectionTimeline.Stage.PermissionRequested));
+        assertEquals(-1, timeline.getDuration(ConnectionTimeline.Stage.PermissionRequested, ConnectionTimeline.Stage.Ready));
+        assertTrue(timeline.getDuration(ConnectionTimeline.Stage.DeviceFound, ConnectionTimeline.Stage.Ready) >= 0);
+        assertTrue(timeline.toString().startsWith("Search +0.0ms, DeviceFound +"));
+        assertFalse(timeline.toString().contains("PermissionRequested"));
+
+        timeline.reset();
+        assertFalse(timeline.isReached(ConnectionTimeline.Stage.Search));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import network.minter.ledger.connector.exceptions.CanceledException;
+import network.minter.ledger.connector.exceptions.DeviceBusyException;
+
+import static network.minter.ledger.connector.ExchangeScheduler.Priority.Background;
+import static network.minter.ledger.connector.ExchangeScheduler.Priority.Interactive;
+import static network.minter.ledger.connector.ExchangeScheduler.Priority.Normal;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExchangeSchedulerTest {
+
+    private static Thread waiter(ExchangeScheduler scheduler, ExchangeScheduler.Priority priority, List<Object> out) {
+        Thread t = new Thread(() -> {
+            try {
+                scheduler.acquire(priority, null);
+                synchronized (out) {
+                    out.add(priority);
+                }
+                scheduler.release();
+            } catch (Exception e) {
+                synchronized (out) {
+                    out.add(e);
+                }
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitDepth(ExchangeScheduler scheduler, int depth) throws InterruptedException {
+        while (scheduler.getQueueDepth() != depth) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void grantsByPriority() throws Exception {
+        ExchangeScheduler scheduler = new ExchangeScheduler();
+        List<Object> order = new ArrayList<>();
+        scheduler.acquire(Normal, null);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(waiter(scheduler, Background, order));
+        awaitDepth(scheduler, 1);
+        threads.add(waiter(scheduler, Normal, order));
+        awaitDepth(scheduler, 2);
+        threads.add(waiter(scheduler, Interactive, order));
+        awaitDepth(scheduler, 3);
+        assertEquals(1, scheduler.getQueueDepth(Background));
+        assertTrue(scheduler.hasWaitersAbove(Normal));
+
+        scheduler.release();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(Interactive, order.get(0));
+        assertEquals(Normal, order.get(1));
+        assertEquals(Background, order.get(2));
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getWaitTime(Background).getCount());
+        assertEquals(2, scheduler.getGrantedCount(Normal));
+    }
+
+    @Test
+    public void rejectionPolicies() throws Exception {
+        ExchangeScheduler scheduler = new ExchangeScheduler();
+        scheduler.setQueueCapacity(Normal, 1, ExchangeScheduler.RejectionPolicy.RejectNew);
+        scheduler.setQueueCapacity(Background, 1, ExchangeScheduler.RejectionPolicy.DropOldest);
+        List<Object> results = new ArrayList<>();
+        scheduler.acquire(Interactive, null);
+
+        Thread normal = waiter(scheduler, Normal, results);
+        awaitDepth(scheduler, 1);
+        waiter(scheduler, Normal, results).join();
+        assertTrue(results.get(0) instanceof DeviceBusyException);
+
+        Thread oldest = waiter(scheduler, Background, results);
+        awaitDepth(scheduler, 2);
+        Thread newest = waiter(scheduler, Background, results);
+        oldest.join();
+        assertTrue(results.get(1) instanceof DeviceBusyException);
+        awaitDepth(scheduler, 2);
+
+        scheduler.release();
+        normal.join();
+        newest.join();
+        assertEquals(Normal, results.get(2));
+        assertEquals(Background, results.get(3));
+        assertEquals(1, scheduler.getRejectedCount(Normal));
+        assertEquals(1, scheduler.getRejectedCount(Background));
+    }
+
+    @Test
+    public void cancelsWaiting() throws Exception {
+        ExchangeScheduler scheduler = new ExchangeScheduler();
+        CancellationToken token = new CancellationToken();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> holder = executor.submit(() -> {
+            scheduler.acquire(Normal, null);
+            awaitDepth(scheduler, 1);
+            token.cancel();
+            awaitDepth(scheduler, 0);
+            scheduler.release();
+            return null;
+        });
+        while (scheduler.getGrantedCount(Normal) == 0) {
+            Thread.sleep(1);
+        }
+        try {
+            scheduler.acquire(Normal, token);
+            fail();
+        } catch (CanceledException ignore) {
+        }
+        holder.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // device is free again
+        scheduler.acquire(Background, null);
+        scheduler.release();
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void reentrant() throws Exception {
+        ExchangeScheduler scheduler = new ExchangeScheduler();
+        scheduler.acquire(Normal, null);
+        scheduler.acquire(Interactive, null);
+        scheduler.release();
+        scheduler.release();
+        try {
+            scheduler.release();
+            fail();
+        } catch (IllegalStateException ignore) {
+        }
+        assertEquals(1, scheduler.getGrantedCount(Normal));
+    }
+}
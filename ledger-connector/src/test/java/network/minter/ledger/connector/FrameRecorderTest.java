@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRecorderTest {
+
+    private static byte[] frame(int value) {
+        byte[] out = new byte[HidFrameEncoder.FRAME_SIZE];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) value;
+        }
+        return out;
+    }
+
+    @Test
+    public void capacityRoundedToPowerOfTwo() {
+        assertEquals(8, new FrameRecorder(5).getCapacity());
+        assertEquals(16, new FrameRecorder(16).getCapacity());
+    }
+
+    @Test
+    public void keepsLastFramesInOrder() {
+        FrameRecorder recorder = new FrameRecorder(4);
+        for (int i = 0; i < 10; i++) {
+            recorder.record(i % 2 == 0 ? FrameRecorder.Direction.Out : FrameRecorder.Direction.In, frame(i), 0, HidFrameEncoder.FRAME_SIZE);
+        }
+
+        List<FrameRecorder.Record> records = recorder.snapshot();
+        assertEquals(10, recorder.getRecordedCount());
+        assertEquals(4, records.size());
+        for (int i = 0; i < 4; i++) {
+            FrameRecorder.Record r = records.get(i);
+            assertEquals(6 + i, r.sequence);
+            assertEquals(i % 2 == 0 ? FrameRecorder.Direction.Out : FrameRecorder.Direction.In, r.direction);
+            assertArrayEquals(frame(6 + i), r.data);
+            if (i > 0) {
+                assertTrue(r.timestampNanos >= records.get(i - 1).timestampNanos);
+            }
+        }
+
+        recorder.clear();
+        assertEquals(0, recorder.snapshot().size());
+    }
+
+    @Test
+    public void partialFrame() {
+        FrameRecorder recorder = new FrameRecorder(2);
+        recorder.record(FrameRecorder.Direction.In, new byte[]{1, 2, 3, (byte) 0xAB}, 1, 3);
+        FrameRecorder.Record r = recorder.snapshot().get(0);
+        assertArrayEquals(new byte[]{2, 3, (byte) 0xAB}, r.data);
+        assertTrue(recorder.dump().startsWith("#0 +0.000ms In  [02 03 ab]"));
+    }
+
+    @Test
+    public void concurrentWritersDoNotTearFrames() throws InterruptedException {
+        final FrameRecorder recorder = new FrameRecorder(16);
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final byte[] data = frame(t + 1);
+            new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    recorder.record(FrameRecorder.Direction.Out, data, 0, data.length);
+                }
+                done.countDown();
+            }).start();
+        }
+
+        while (done.getCount() > 0) {
+            for (FrameRecorder.Record r : recorder.snapshot()) {
+                for (byte b : r.data) {
+                    assertEquals(r.data[0], b);
+                }
+            }
+        }
+        assertEquals(threads * 20000, recorder.getRecordedCount());
+        assertEquals(16, recorder.snapshot().size());
+    }
+}
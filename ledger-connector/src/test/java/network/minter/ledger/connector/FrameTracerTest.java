@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameTracerTest {
+    private final List<String> mLines = new ArrayList<>();
+    private final Timber.Tree mTree = new Timber.Tree() {
+        @Override
+        protected void log(int priority, String tag, String message, Throwable t) {
+            mLines.add(message);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Timber.plant(mTree);
+    }
+
+    @After
+    public void tearDown() {
+        Timber.uproot(mTree);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        FrameTracer tracer = new FrameTracer();
+        assertFalse(tracer.isEnabled());
+        tracer.setEnabled(true);
+        assertTrue(tracer.isEnabled());
+        Timber.uproot(mTree);
+        assertFalse(tracer.isEnabled());
+        Timber.plant(mTree);
+    }
+
+    @Test
+    public void dumpFormat() {
+        FrameTracer tracer = new FrameTracer();
+        tracer.traceResponse(new byte[]{0x01, (byte) 0xab, (byte) 0xff, 0x00});
+        tracer.traceRead(2, new byte[]{0x10, 0x20, 0x30}, 2);
+        assertEquals("Response[4]: [01 ab ff 00]", mLines.get(0));
+        assertEquals("Read frame[2:2]: [10 20]", mLines.get(1));
+    }
+
+    @Test
+    public void writeDumpsEachFrame() {
+        FrameTracer tracer = new FrameTracer();
+        ByteBuffer frames = new HidFrameEncoder().encode(new APDU(0x04, 0, 0, new byte[100]));
+        tracer.traceWrite(frames);
+        assertEquals(2, mLines.size());
+        assertTrue(mLines.get(0).startsWith("Write frame[0]: [01 01 05 00 00 00 69 e0 04"));
+        assertTrue(mLines.get(1).startsWith("Write frame[1]: [01 01 05 00 01 "));
+        assertEquals("Write frame[0]: ".length() + 64 * 3 + 1, mLines.get(0).length());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HidFrameDecoderTest {
+
+    private static byte[][] makeFrames(int channel, byte[] data, int status) {
+        byte[] body = new byte[2 + data.length + 2];
+        int len = data.length + 2;
+        body[0] = (byte) (len >> 8);
+        body[1] = (byte) len;
+        System.arraycopy(data, 0, body, 2, data.length);
+        body[body.length - 2] = (byte) (status >> 8);
+        body[body.length - 1] = (byte) status;
+
+        int count = (body.length + 58) / 59;
+        byte[][] frames = new byte[count][64];
+        for (int seq = 0; seq < count; seq++) {
+            byte[] f = frames[seq];
+            f[0] = (byte) (channel >> 8);
+            f[1] = (byte) channel;
+            f[2] = 0x05;
+            f[3] = (byte) (seq >> 8);
+            f[4] = (byte) seq;
+            int off = seq * 59;
+            System.arraycopy(body, off, f, 5, Math.min(59, body.length - off));
+        }
+        return frames;
+    }
+
+    private static byte[] sequence(int size) {
+        byte[] out = new byte[size];
+        for (int i = 0; i < size; i++) {
+            out[i] = (byte) (i * 7 + 3);
+        }
+        return out;
+    }
+
+    @Test
+    public void singleFrame() throws IOException {
+        byte[] data = new byte[]{0x01, 0x02, 0x03};
+        byte[][] frames = makeFrames(0x0101, data, 0x9000);
+        assertEquals(1, frames.length);
+
+        HidFrameDecoder decoder = new HidFrameDecoder();
+        assertTrue(decoder.feed(frames[0], 64));
+        assertEquals(0x9000, decoder.getStatusCode());
+        assertEquals(3, decoder.getDataLength());
+
+        ByteBuffer view = decoder.getData();
+        assertEquals(3, view.remaining());
+        assertEquals(0x01, view.get(0));
+        assertEquals(0x03, view.get(2));
+    }
+
+    @Test
+    public void responseLongerThan255Bytes() throws IOException {
+        byte[] data = sequence(300);
+        byte[][] frames = makeFrames(0x0101, data, 0x6985);
+
+        HidFrameDecoder decoder = new HidFrameDecoder();
+        for (int i = 0; i < frames.length - 1; i++) {
+            assertFalse(decoder.feed(frames[i], 64));
+        }
+        assertTrue(decoder.feed(frames[frames.length - 1], 64));
+        assertEquals(frames.length, decoder.getFrameCount());
+        assertEquals(0x6985, decoder.getStatusCode());
+        byte[] out = decoder.copyData();
+        assertEquals(300, out.length);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(data[i], out[i]);
+        }
+    }
+
+    @Test
+    public void reuseAfterReset() throws IOException {
+        HidFrameDecoder decoder = new HidFrameDecoder();
+        for (byte[] f : makeFrames(0x0101, sequence(120), 0x9000)) {
+            decoder.feed(f, 64);
+        }
+        decoder.reset();
+        assertFalse(decoder.isComplete());
+        assertTrue(decoder.feed(makeFrames(0x0101, new byte[]{0x42}, 0x9000)[0], 64));
+        assertEquals(1, decoder.getDataLength());
+        assertEquals(0x42, decoder.getData().get(0));
+    }
+
+    @Test
+    public void resetToChannel() throws IOException {
+        byte[] frame = makeFrames(0x1234, new byte[]{0x42}, 0x9000)[0];
+        assertEquals(0x1234, HidFrameDecoder.getChannel(frame, 64));
+        assertEquals(-1, HidFrameDecoder.getChannel(frame, 4));
+
+        HidFrameDecoder decoder = new HidFrameDecoder();
+        decoder.reset(0x1234);
+        assertEquals(0x1234, decoder.getChannel());
+        assertTrue(decoder.feed(frame, 64));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongChannel() throws IOException {
+        new HidFrameDecoder().feed(makeFrames(0x0202, new byte[1], 0x9000)[0], 64);
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongTag() throws IOException {
+        byte[] frame = makeFrames(0x0101, new byte[1], 0x9000)[0];
+        frame[2] = 0x02;
+        new HidFrameDecoder().feed(frame, 64);
+    }
+
+    @Test(expected = IOException.class)
+    public void outOfOrderSequence() throws IOException {
+        byte[][] frames = makeFrames(0x0101, sequence(200), 0x9000);
+        HidFrameDecoder decoder = new HidFrameDecoder();
+        decoder.feed(frames[0], 64);
+        decoder.feed(frames[2], 64);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HidFrameEncoderTest {
+
+    @Test
+    public void singleFrameLayout() {
+        APDU apdu = new APDU(0x02, 0x01, 0x00, new byte[]{0x00, 0x00, 0x00, 0x05});
+        byte[] data = apdu.getData();
+
+        assertEquals(64, data.length);
+        byte[] expected = new byte[64];
+        byte[] head = new byte[]{
+                0x01, 0x01, 0x05, 0x00, 0x00, // channel, tag, sequence
+                0x00, 0x09, // apdu length
+                (byte) 0xe0, 0x02, 0x01, 0x00, 0x04, // cls, ins, p1, p2, lc
+                0x00, 0x00, 0x00, 0x05
+        };
+        System.arraycopy(head, 0, expected, 0, head.length);
+        assertArrayEquals(expected, data);
+    }
+
+    @Test
+    public void emptyPayload() {
+        APDU apdu = new APDU(0x01, (byte[]) null);
+        assertEquals(1, HidFrameEncoder.getFrameCount(apdu));
+        byte[] data = apdu.getData();
+        assertEquals(64, data.length);
+        assertEquals(0x05, data[6]);
+        assertEquals(0, data[11]);
+    }
+
+    @Test
+    public void multiFrameSequencing() {
+        byte[] payload = new byte[200];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i + 1);
+        }
+        APDU apdu = new APDU(0x04, payload);
+        // 2 + 5 + 200 = 207 bytes => 4 frames of 59 bytes
+        assertEquals(4, HidFrameEncoder.getFrameCount(apdu));
+
+        byte[] data = apdu.getData();
+        assertEquals(4 * 64, data.length);
+
+        int pl = 0;
+        for (int seq = 0; seq < 4; seq++) {
+            int off = seq * 64;
+            assertEquals(0x01, data[off]);
+            assertEquals(0x01, data[off + 1]);
+            assertEquals(0x05, data[off + 2]);
+            assertEquals(seq, ((data[off + 3] & 0xFF) << 8) | (data[off + 4] & 0xFF));
+
+            int start = seq == 0 ? off + 12 : off + 5;
+            for (int i = start; i < off + 64 && pl < payload.length; i++) {
+                assertEquals(payload[pl++], data[i]);
+            }
+        }
+        assertEquals(payload.length, pl);
+        assertEquals(0, data[data.length - 1]);
+    }
+
+    @Test
+    public void customChannel() {
+        HidFrameEncoder encoder = new HidFrameEncoder(0xABCD);
+        ByteBuffer out = encoder.encode(new APDU(0x01, (byte[]) null));
+        assertEquals((byte) 0xAB, out.get(0));
+        assertEquals((byte) 0xCD, out.get(1));
+    }
+
+    @Test
+    public void pooledBufferReused() {
+        HidFrameEncoder encoder = new HidFrameEncoder();
+        ByteBuffer first = encoder.encode(new APDU(0x02, new byte[4]));
+        assertEquals(64, first.limit());
+        ByteBuffer second = encoder.encode(new APDU(0x04, new byte[36]));
+        assertSame(first, second);
+        assertEquals(64, second.limit());
+    }
+
+    @Test
+    public void encodeIntoCallerBuffer() {
+        ByteBuffer out = ByteBuffer.allocate(3 * 64);
+        out.position(64);
+        int frames = new HidFrameEncoder().encode(new APDU(0x04, new byte[60]), out);
+        assertEquals(2, frames);
+        assertEquals(3 * 64, out.position());
+        assertEquals(0, out.get(0));
+        assertEquals(0x01, out.get(64));
+    }
+
+    @Test
+    public void maxPayloadFitsLc() {
+        APDU apdu = new APDU(0x04, new byte[HidFrameEncoder.MAX_PAYLOAD_SIZE]);
+        ByteBuffer out = new HidFrameEncoder().encode(apdu);
+        assertEquals((byte) 0xFF, out.get(11));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void payloadLongerThanLc() {
+        new HidFrameEncoder().encode(new APDU(0x04, new byte[HidFrameEncoder.MAX_PAYLOAD_SIZE + 1]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void payloadLongerThanLcIntoCallerBuffer() {
+        new HidFrameEncoder().encode(new APDU(0x04, new byte[300]), ByteBuffer.allocate(8 * 64));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notEnoughSpace() {
+        new HidFrameEncoder().encode(new APDU(0x04, new byte[60]), ByteBuffer.allocate(64));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverValues() {
+        long prevUpper = -1;
+        for (int bucket = 0; bucket < 600; bucket++) {
+            long upper = LatencyHistogram.bucketUpperBound(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(prevUpper + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            prevUpper = upper;
+        }
+    }
+
+    @Test
+    public void precision() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long value = Math.abs(random.nextLong()) >>> (16 + random.nextInt(40));
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketOf(value));
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(1000000, h.getMax());
+        assertEquals(500500, h.getMean(), 0.001);
+
+        long p50 = h.getValueAtPercentile(50);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16);
+        long p99 = h.getValueAtPercentile(99);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(1000000, h.getValueAtPercentile(100));
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+}
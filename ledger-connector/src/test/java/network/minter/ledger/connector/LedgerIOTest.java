@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LedgerIOTest {
+    private static final long AWAIT_SECONDS = 10;
+
+    @Test
+    public void connectionsDoNotShareWriteLock() throws Exception {
+        final int connections = 3;
+        // every transport holds its write until all of them are writing
+        final CountDownLatch writing = new CountDownLatch(connections);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(connections);
+        final List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                final LedgerIO io = new LedgerIO(new HoldingTransport(writing, release));
+                futures.add(executor.submit(() -> io.write(new byte[HidFrameEncoder.FRAME_SIZE])));
+            }
+            assertTrue("Connections blocked each other", writing.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(HidFrameEncoder.FRAME_SIZE, (int) future.get(AWAIT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    private final static class HoldingTransport implements LedgerTransport {
+        private final CountDownLatch mWriting;
+        private final CountDownLatch mRelease;
+
+        HoldingTransport(CountDownLatch writing, CountDownLatch release) {
+            mWriting = writing;
+            mRelease = release;
+        }
+
+        @Override
+        public int getPacketSize() {
+            return HidFrameEncoder.FRAME_SIZE;
+        }
+
+        @Override
+        public int read(byte[] out, int length, long timeoutMs) {
+            return 0;
+        }
+
+        @Override
+        public int write(byte[] data, int offset, int length, long timeoutMs) {
+            mWriting.countDown();
+            try {
+                if (!mRelease.await(AWAIT_SECONDS, TimeUnit.SECONDS)) {
+                    return 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            return length;
+        }
+
+        @Override
+        public void cancelRead() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,704 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.core.util.Pair;
+import network.minter.blockchain.models.operational.SignatureSingleData;
+import network.minter.core.crypto.BytesData;
+import network.minter.core.crypto.MinterAddress;
+import network.minter.ledger.connector.emulator.MinterAppEmulator;
+import network.minter.ledger.connector.exceptions.CanceledException;
+import network.minter.ledger.connector.exceptions.ResponseException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MinterLedgerEmulatorTest {
+    private static final String MNEMONIC = "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about";
+    private static final long AWAIT_SECONDS = 10;
+    private MinterAppEmulator mEmulator;
+    private MinterLedger mLedger;
+
+    static BytesData hash(int seed) {
+        byte[] out = new byte[32];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) (seed + i);
+        }
+        return new BytesData(out);
+    }
+
+    /**
+     * Usable in emulator hooks and worker threads, fails if latch is not opened in time
+     */
+    static void awaitLatch(CountDownLatch latch) {
+        try {
+            if (!latch.await(AWAIT_SECONDS, TimeUnit.SECONDS)) {
+                throw new AssertionError("Latch has not been opened in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Waits until thread parks, for example on a monitor or in device queue
+     */
+    static void awaitWaiting(Thread thread) {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(AWAIT_SECONDS);
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Thread has not started waiting in time");
+            }
+            Thread.yield();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mEmulator = new MinterAppEmulator.Builder()
+                .setMnemonic(MNEMONIC)
+                .setVersion(1, 2, 3)
+                .build();
+        mLedger = new MinterLedger(mEmulator);
+    }
+
+    @After
+    public void tearDown() {
+        mLedger.destroy();
+    }
+
+    @Test
+    public void getVersion() throws ResponseException {
+        Pair<MinterLedger.Status, String> res = mLedger.getVersion();
+        assertEquals(MinterLedger.Status.Ok, res.first);
+        assertEquals("1.2.3", res.second);
+    }
+
+    @Test
+    public void recordsFrames() throws ResponseException {
+        mLedger.getVersion();
+        List<FrameRecorder.Record> records = mLedger.getFrameRecorder().snapshot();
+        assertEquals(2, records.size());
+        assertEquals(FrameRecorder.Direction.Out, records.get(0).direction);
+        assertEquals(FrameRecorder.Direction.In, records.get(1).direction);
+        assertEquals(0x01, records.get(0).data[8]);
+    }
+
+    @Test
+    public void metrics() throws ResponseException {
+        final int[] calls = {0};
+        LedgerMetrics metrics = mLedger.getMetrics();
+        metrics.addListener((command, status, frames, write, firstFrame, reassembly, total) -> {
+            assertTrue(write >= 0 && firstFrame >= 0 && reassembly >= 0);
+            assertTrue(total >= write + firstFrame + reassembly);
+            calls[0]++;
+        });
+
+        mLedger.getVersion();
+        mLedger.getAddresses(0, 3, true);
+        mLedger.signTxHash(hash(1));
+        mEmulator.setUserRejects(true);
+        try {
+            mLedger.signTxHash(hash(2));
+            fail();
+        } catch (ResponseException e) {
+            assertEquals(MinterLedger.Status.UserRejected, e.getStatus());
+        }
+
+        assertEquals(6, calls[0]);
+        assertEquals(1, metrics.getCount(MinterLedger.Command.GetVersion, MinterLedger.Status.Ok));
+        assertEquals(3, metrics.getCount(MinterLedger.Command.GetAddressSilent));
+        assertEquals(2, metrics.getCount(MinterLedger.Command.SignHash));
+        assertEquals(1, metrics.getErrorCount(MinterLedger.Command.SignHash));
+        assertEquals(1, metrics.getCount(MinterLedger.Command.SignHash, MinterLedger.Status.UserRejected));
+        // signature takes 2 frames, rejection - 1
+        assertEquals(3, metrics.getFrameCount(MinterLedger.Command.SignHash));
+        assertEquals(3, metrics.getHistogram(MinterLedger.Command.GetAddressSilent, LedgerMetrics.Phase.Total).getCount());
+    }
+
+    @Test
+    public void cancelSkipsStaleResponse() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch confirmed = new CountDownLatch(1);
+        // with latency command is processed on emulator thread, where hook holds it until user "confirms"
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        mEmulator.setOnCommand(() -> {
+            received.countDown();
+            awaitLatch(confirmed);
+        });
+        final CancellationToken token = new CancellationToken();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<?> canceler = executor.submit(() -> {
+            awaitLatch(received);
+            token.cancel();
+        });
+
+        try {
+            mLedger.signTxHash(0, hash(1), token);
+            fail();
+        } catch (ResponseException e) {
+            assertEquals(MinterLedger.Status.Canceled, e.getStatus());
+        } finally {
+            mEmulator.setOnCommand(null);
+            confirmed.countDown();
+        }
+        canceler.get();
+        executor.shutdown();
+        assertEquals(1, mLedger.getMetrics().getCount(MinterLedger.Command.SignHash, MinterLedger.Status.Canceled));
+
+        // late signature must not be taken as address
+        Pair<MinterLedger.Status, MinterAddress> res = mLedger.getAddress(5, true);
+        assertEquals(MinterLedger.Status.Ok, res.first);
+        assertArrayEquals(mEmulator.getAddress(5), res.second.getData());
+        assertEquals(2, mLedger.getDroppedFrameCount());
+    }
+
+    @Test
+    public void exchangeAfterDisconnectLosesConnection() throws Exception {
+        mLedger.disconnect();
+        final MinterLedger.ExchangeResult result = mLedger.exchange(MinterLedger.Command.GetVersion, null, null);
+        assertEquals(MinterLedger.Status.ConnectionLost, result.status);
+        assertEquals(0, mEmulator.getCommandsCount());
+    }
+
+    @Test
+    public void canceledTokenDoesNotSend() throws Exception {
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            mLedger.exchange(MinterLedger.Command.GetVersion, null, token);
+            fail();
+        } catch (CanceledException ignore) {
+        }
+        assertEquals(0, mEmulator.getCommandsCount());
+        assertEquals(MinterLedger.Status.Ok, mLedger.getVersion().first);
+    }
+
+    @Test
+    public void prefetchesNextAddresses() throws Exception {
+        // prefetcher derives addresses one by one, so when command of next index reaches device,
+        // previous one has been already processed. Window is full until next lookup
+        final CountDownLatch firstWindow = new CountDownLatch(1 + 3);
+        final CountDownLatch secondWindow = new CountDownLatch(1 + 6);
+        final CountDownLatch afterJump = new CountDownLatch(1 + 6 + 1 + 1);
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        mEmulator.setOnCommand(() -> {
+            firstWindow.countDown();
+            secondWindow.countDown();
+            afterJump.countDown();
+        });
+        mLedger.setAddressPrefetch(3);
+        AddressPrefetcher prefetcher = mLedger.getAddressPrefetcher();
+
+        // 10 by user, then 11..13 by prefetcher
+        assertArrayEquals(mEmulator.getAddress(10), mLedger.getAddress(10, true).second.getData());
+        awaitLatch(firstWindow);
+
+        // last one may be still in flight, then it's handed off
+        for (int i = 11; i <= 13; i++) {
+            assertArrayEquals(mEmulator.getAddress(i), mLedger.getAddress(i, true).second.getData());
+        }
+        assertEquals(1, prefetcher.getMissCount());
+        assertEquals(3, prefetcher.getHitCount());
+
+        // jump away from window 14..16: unused addresses are wasted
+        awaitLatch(secondWindow);
+        mLedger.getAddress(100, true);
+        assertEquals(2, prefetcher.getMissCount());
+        // 101 reaches device after 16 has been dropped
+        awaitLatch(afterJump);
+        assertEquals(3, prefetcher.getWastedCount());
+        assertEquals(6, prefetcher.getPrefetchCount());
+
+        mLedger.setAddressPrefetch(0);
+        assertNull(mLedger.getAddressPrefetcher());
+    }
+
+    @Test
+    public void userCallTakesInFlightPrefetch() throws Exception {
+        final AtomicInteger commands = new AtomicInteger(0);
+        final CountDownLatch prefetching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        // hold prefetch of index 1, that follows user call for index 0
+        mEmulator.setOnCommand(() -> {
+            if (commands.incrementAndGet() == 2) {
+                prefetching.countDown();
+                awaitLatch(release);
+            }
+        });
+        mLedger.setAddressPrefetch(1);
+        AddressPrefetcher prefetcher = mLedger.getAddressPrefetcher();
+        mLedger.getAddress(0, true);
+        awaitLatch(prefetching);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AtomicReference<Thread> worker = new AtomicReference<>();
+            final CountDownLatch started = new CountDownLatch(1);
+            final Future<MinterAddress> res = executor.submit(() -> {
+                worker.set(Thread.currentThread());
+                started.countDown();
+                return mLedger.getAddress(1, true).second;
+            });
+            awaitLatch(started);
+            awaitWaiting(worker.get());
+            release.countDown();
+
+            assertArrayEquals(mEmulator.getAddress(1), res.get(AWAIT_SECONDS, TimeUnit.SECONDS).getData());
+            // user call has not derived index 1 on its own
+            assertEquals(1, prefetcher.getMissCount());
+            assertEquals(1, prefetcher.getHitCount());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void prefetchSkipsCachedAddresses() throws Exception {
+        final File file = File.createTempFile("address-cache", ".bin");
+        try {
+            mLedger.setAddressCache(new AddressCache(file, 100, 16));
+            // verifies cache with index 0 and stores 1..2
+            mLedger.getAddresses(1, 2, true);
+            final long commands = mEmulator.getCommandsCount();
+
+            mLedger.setAddressPrefetch(2);
+            mLedger.getAddress(0, true);
+            assertEquals(commands, mEmulator.getCommandsCount());
+            assertEquals(0, mLedger.getAddressPrefetcher().getPrefetchCount());
+        } finally {
+            mLedger.setAddressCache(null);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void canceledTokenDoesNotVerifyCache() throws Exception {
+        final File file = File.createTempFile("address-cache", ".bin");
+        try {
+            mLedger.setAddressCache(new AddressCache(file, 100, 16));
+            final CancellationToken token = new CancellationToken();
+            token.cancel();
+            try {
+                mLedger.getAddress(5, true, token);
+                fail();
+            } catch (ResponseException e) {
+                assertEquals(MinterLedger.Status.Canceled, e.getStatus());
+            }
+            assertEquals(0, mEmulator.getCommandsCount());
+            assertFalse(mLedger.isAddressCached(0));
+        } finally {
+            mLedger.setAddressCache(null);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void addressPriorityIsPassedToScheduler() throws Exception {
+        final File file = File.createTempFile("address-cache", ".bin");
+        try {
+            mLedger.setAddressCache(new AddressCache(file, 100, 16));
+            final ExchangeScheduler scheduler = mLedger.getScheduler();
+            scheduler.resetStats();
+            // cache verification and derivation
+            mLedger.getAddress(5, true, ExchangeScheduler.Priority.Background, null);
+            assertEquals(2, scheduler.getGrantedCount(ExchangeScheduler.Priority.Background));
+            assertEquals(0, scheduler.getGrantedCount(ExchangeScheduler.Priority.Normal));
+        } finally {
+            mLedger.setAddressCache(null);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void silentCommandFailsFast() throws Exception {
+        // device does not answer until released
+        final CountDownLatch release = new CountDownLatch(1);
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        mEmulator.setOnCommand(() -> awaitLatch(release));
+        mLedger.getReadDeadlines().setTimeout(MinterLedger.Command.GetVersion, 50, TimeUnit.MILLISECONDS);
+        mLedger.getRetryPolicy().setMaxAttempts(1);
+
+        try {
+            mLedger.getVersion();
+            fail();
+        } catch (ResponseException e) {
+            assertEquals(MinterLedger.Status.ReadTimeout, e.getStatus());
+        } finally {
+            mEmulator.setOnCommand(null);
+            release.countDown();
+        }
+
+        // late version response is skipped
+        mEmulator.setLatency(0, TimeUnit.MILLISECONDS);
+        assertArrayEquals(mEmulator.getAddress(2), mLedger.getAddress(2, true).second.getData());
+    }
+
+    @Test
+    public void errorResponsesAreNotLearned() throws Exception {
+        // wrong payload length, device answers with error
+        MinterLedger.ExchangeResult result = mLedger.exchange(MinterLedger.Command.GetAddressSilent, new byte[1]);
+        assertEquals(MinterLedger.Status.InvalidParameter, result.status);
+        assertEquals(0, mLedger.getReadDeadlines().getResponseTimes(MinterLedger.Command.GetAddressSilent).getCount());
+
+        mLedger.getAddress(1, true);
+        assertEquals(1, mLedger.getReadDeadlines().getResponseTimes(MinterLedger.Command.GetAddressSilent).getCount());
+    }
+
+    private static long createdTimeout(MinterLedger.Command command) {
+        MinterLedger ledger = new MinterLedger(new MinterAppEmulator.Builder().setMnemonic(MNEMONIC).build());
+        try {
+            return ledger.getReadDeadlines().getTimeout(command);
+        } finally {
+            ledger.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void legacyReadTimeout() {
+        final int defaultTimeout = MinterLedger.READ_TIMEOUT_SECONDS;
+        try {
+            MinterLedger.READ_TIMEOUT_SECONDS = 5;
+            assertEquals(TimeUnit.SECONDS.toNanos(5), createdTimeout(MinterLedger.Command.GetVersion));
+            assertEquals(TimeUnit.SECONDS.toNanos(5), createdTimeout(MinterLedger.Command.SignHash));
+
+            MinterLedger.READ_TIMEOUT_SECONDS = -1;
+            assertEquals(ReadDeadlines.INFINITE, createdTimeout(MinterLedger.Command.GetAddressSilent));
+        } finally {
+            MinterLedger.READ_TIMEOUT_SECONDS = defaultTimeout;
+        }
+        // per-command defaults
+        assertEquals(TimeUnit.SECONDS.toNanos(2), createdTimeout(MinterLedger.Command.GetVersion));
+    }
+
+    @Test
+    public void tokenDeadline() throws Exception {
+        // user never confirms
+        final CountDownLatch release = new CountDownLatch(1);
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        mEmulator.setOnCommand(() -> awaitLatch(release));
+        try {
+            mLedger.signTxHash(0, hash(1), CancellationToken.withTimeout(50, TimeUnit.MILLISECONDS));
+            fail();
+        } catch (ResponseException e) {
+            assertEquals(MinterLedger.Status.ReadTimeout, e.getStatus());
+        } finally {
+            mEmulator.setOnCommand(null);
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void retriesLostSilentResponse() throws Exception {
+        mLedger.getReadDeadlines().setTimeout(MinterLedger.Command.GetAddressSilent, 50, TimeUnit.MILLISECONDS);
+        mEmulator.loseResponses(1);
+
+        assertArrayEquals(mEmulator.getAddress(3), mLedger.getAddress(3, true).second.getData());
+        assertEquals(2, mEmulator.getCommandsCount());
+        assertEquals(1, mLedger.getRetryPolicy().getRetryCount(MinterLedger.Command.GetAddressSilent));
+        assertEquals(1, mLedger.getRetryPolicy().getRecoveredCount(MinterLedger.Command.GetAddressSilent));
+    }
+
+    @Test
+    public void signIsNotRetried() throws Exception {
+        mEmulator.loseResponses(1);
+        try {
+            mLedger.signTxHash(0, hash(1), CancellationToken.withTimeout(50, TimeUnit.MILLISECONDS));
+            fail();
+        } catch (ResponseException e) {
+            assertEquals(MinterLedger.Status.ReadTimeout, e.getStatus());
+        }
+        assertEquals(1, mEmulator.getCommandsCount());
+        assertEquals(0, mLedger.getRetryPolicy().getRetryCount());
+    }
+
+    @Test
+    public void lateAnswerIsDrained() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch answered = new CountDownLatch(1);
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        mEmulator.setOnCommand(() -> awaitLatch(release));
+        try {
+            mLedger.signTxHash(0, hash(1), CancellationToken.withTimeout(50, TimeUnit.MILLISECONDS));
+            fail();
+        } catch (ResponseException e) {
+            assertEquals(MinterLedger.Status.ReadTimeout, e.getStatus());
+        } finally {
+            mEmulator.setOnCommand(null);
+        }
+        // user confirms after app gave up
+        mEmulator.setOnResponse(answered::countDown);
+        release.countDown();
+        awaitLatch(answered);
+        mEmulator.setOnResponse(null);
+        mEmulator.setLatency(0, TimeUnit.MILLISECONDS);
+
+        assertEquals(MinterLedger.Status.Ok, mLedger.getVersion().first);
+        assertEquals(2, mLedger.getDroppedFrameCount());
+    }
+
+    @Test
+    public void disconnectDoesNotWaitForConfirmation() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        mEmulator.setOnCommand(() -> {
+            received.countDown();
+            awaitLatch(release);
+        });
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> sign = executor.submit(() -> mLedger.signTxHash(0, hash(1)));
+            awaitLatch(received);
+
+            // device is waiting for user, as if it has been detached
+            final Thread disconnect = new Thread(mLedger::disconnect);
+            disconnect.start();
+            disconnect.join(TimeUnit.SECONDS.toMillis(AWAIT_SECONDS));
+            assertFalse(disconnect.isAlive());
+            try {
+                sign.get(AWAIT_SECONDS, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals(MinterLedger.Status.ConnectionLost, ((ResponseException) e.getCause()).getStatus());
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void channelsHaveNonZeroHighByte() throws ResponseException {
+        for (int i = 0; i < 0x10000; i++) {
+            assertTrue(mLedger.nextChannel() >= 0x0100);
+        }
+        for (int i = 0; i < 300; i++) {
+            assertEquals(MinterLedger.Status.Ok, mLedger.getVersion().first);
+        }
+    }
+
+    @Test
+    public void connectionTimeline() throws ResponseException {
+        ConnectionTimeline timeline = mLedger.getConnectionTimeline();
+        assertTrue(timeline.isReached(ConnectionTimeline.Stage.Ready));
+        assertFalse(timeline.isReached(ConnectionTimeline.Stage.FirstResponse));
+        mLedger.getVersion();
+        assertTrue(timeline.getDuration(ConnectionTimeline.Stage.Ready, ConnectionTimeline.Stage.FirstResponse) > 0);
+    }
+
+    @Test
+    public void getAddress() throws ResponseException {
+        for (int i = 0; i < 3; i++) {
+            MinterAddress address = mLedger.getAddress(i, true).second;
+            assertArrayEquals(mEmulator.getAddress(i), address.getData());
+        }
+        assertArrayEquals(mEmulator.getAddress(7), mLedger.getAddress(7, false).second.getData());
+    }
+
+    @Test
+    public void getAddresses() throws ResponseException {
+        MinterAddress[] addresses = mLedger.getAddresses(10, 5, true);
+        assertEquals(5, addresses.length);
+        for (int i = 0; i < addresses.length; i++) {
+            assertArrayEquals(mEmulator.getAddress(10 + i), addresses[i].getData());
+        }
+    }
+
+    @Test
+    public void signTxHash() throws ResponseException {
+        BytesData hash = hash(1);
+        SignatureSingleData sig = mLedger.signTxHash(2, hash).second;
+        assertTrue(mEmulator.verify(2, hash.getBytes(), sig.getR().getBytes(), sig.getS().getBytes()));
+    }
+
+    @Test
+    public void signTxHashes() throws ResponseException {
+        List<MinterLedger.SignRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            requests.add(new MinterLedger.SignRequest(i, hash(i * 10)));
+        }
+        List<Integer> progress = new ArrayList<>();
+        List<SignatureSingleData> sigs = mLedger.signTxHashes(requests, (pos, total, sig) -> progress.add(pos));
+
+        assertEquals(4, sigs.size());
+        assertEquals(4, progress.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(mEmulator.verify(i, hash(i * 10).getBytes(), sigs.get(i).getR().getBytes(), sigs.get(i).getS().getBytes()));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void nestedCallDoesNotJoinWaitingLeader() throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicReference<String> nested = new AtomicReference<>();
+        final Thread[] leader = new Thread[1];
+
+        mLedger.signTxHashes(Collections.singletonList(new MinterLedger.SignRequest(0, hash(1))), (pos, total, sig) -> {
+            leader[0] = new Thread(() -> {
+                try {
+                    mLedger.getVersion();
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            leader[0].start();
+            // leader is in flight and waits for device, held by this thread
+            while (mLedger.getScheduler().getQueueDepth() == 0) {
+                Thread.yield();
+            }
+            try {
+                nested.set(mLedger.getVersion().second);
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        leader[0].join();
+
+        assertNull(error.get());
+        assertEquals("1.2.3", nested.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void nestedCallDoesNotWaitForPrefetch() throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicReference<MinterAddress> nested = new AtomicReference<>();
+        final ExchangeScheduler scheduler = mLedger.getScheduler();
+        mLedger.setAddressPrefetch(1);
+        final AddressPrefetcher prefetcher = mLedger.getAddressPrefetcher();
+
+        scheduler.acquire(ExchangeScheduler.Priority.Interactive, null);
+        try {
+            // prefetch of index 1 has started and waits for device, held by this thread
+            prefetcher.lookup(0);
+            while (scheduler.getQueueDepth() == 0) {
+                Thread.yield();
+            }
+            mLedger.signTxHashes(Collections.singletonList(new MinterLedger.SignRequest(0, hash(1))), (pos, total, sig) -> {
+                try {
+                    nested.set(mLedger.getAddress(1, true).second);
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+        } finally {
+            scheduler.release();
+        }
+
+        assertNull(error.get());
+        assertArrayEquals(mEmulator.getAddress(1), nested.get().getData());
+    }
+
+    @Test
+    public void userRejected() {
+        mEmulator.setUserRejects(true);
+        try {
+            mLedger.signTxHash(0, hash(0));
+            fail("Must be rejected");
+        } catch (ResponseException e) {
+            assertEquals(MinterLedger.Status.UserRejected, e.getStatus());
+        }
+    }
+
+    @Test
+    public void independentDevicesRunInParallel() throws Exception {
+        final int devices = 3;
+        final int calls = 10;
+        // every device holds its first command until all devices have received theirs
+        final CountDownLatch arrived = new CountDownLatch(devices);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<MinterAppEmulator> emulators = new ArrayList<>();
+        final List<MinterLedger> ledgers = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            MinterAppEmulator emulator = new MinterAppEmulator.Builder()
+                    .setMnemonic(MNEMONIC)
+                    .build();
+            emulator.setOnCommand(() -> {
+                arrived.countDown();
+                awaitLatch(release);
+            });
+            emulators.add(emulator);
+            ledgers.add(new MinterLedger(emulator));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(devices);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (MinterLedger ledger : ledgers) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < calls; i++) {
+                        assertEquals(MinterLedger.Status.Ok, ledger.getVersion().first);
+                    }
+                    return null;
+                }));
+            }
+
+            assertTrue("Devices blocked each other", arrived.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            for (MinterAppEmulator emulator : emulators) {
+                emulator.setOnCommand(null);
+            }
+            release.countDown();
+        }
+
+        for (Future<?> future : futures) {
+            future.get(AWAIT_SECONDS, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        for (MinterLedger ledger : ledgers) {
+            ledger.destroy();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadDeadlinesTest {
+
+    @Test
+    public void defaults() {
+        ReadDeadlines deadlines = new ReadDeadlines();
+        assertEquals(TimeUnit.SECONDS.toNanos(2), deadlines.getDeadline(MinterLedger.Command.GetAddressSilent));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), deadlines.getDeadline(MinterLedger.Command.GetVersion));
+        assertEquals(TimeUnit.MINUTES.toNanos(5), deadlines.getDeadline(MinterLedger.Command.SignHash));
+        assertTrue(ReadDeadlines.isConfirmed(MinterLedger.Command.GetAddress));
+        assertFalse(deadlines.isAdaptive());
+
+        deadlines.setTimeout(MinterLedger.Command.SignHash, -1, TimeUnit.SECONDS);
+        assertEquals(ReadDeadlines.INFINITE, deadlines.getDeadline(MinterLedger.Command.SignHash));
+    }
+
+    @Test
+    public void adaptive() {
+        ReadDeadlines deadlines = new ReadDeadlines();
+        deadlines.setAdaptive(true);
+        deadlines.setAdaptiveFloor(1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < ReadDeadlines.ADAPTIVE_MIN_SAMPLES - 1; i++) {
+            deadlines.record(MinterLedger.Command.GetAddressSilent, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        // not enough samples yet
+        assertEquals(TimeUnit.SECONDS.toNanos(2), deadlines.getDeadline(MinterLedger.Command.GetAddressSilent));
+
+        deadlines.record(MinterLedger.Command.GetAddressSilent, TimeUnit.MILLISECONDS.toNanos(10));
+        long learned = deadlines.getDeadline(MinterLedger.Command.GetAddressSilent);
+        assertTrue(learned >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(learned < TimeUnit.MILLISECONDS.toNanos(50));
+
+        // configured timeout is upper bound
+        deadlines.setTimeout(MinterLedger.Command.GetAddressSilent, 20, TimeUnit.MILLISECONDS);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), deadlines.getDeadline(MinterLedger.Command.GetAddressSilent));
+
+        // floor is lower bound
+        deadlines.setTimeout(MinterLedger.Command.GetAddressSilent, 2, TimeUnit.SECONDS);
+        deadlines.setAdaptiveFloor(1, TimeUnit.SECONDS);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), deadlines.getDeadline(MinterLedger.Command.GetAddressSilent));
+
+        // confirmed commands are not learned
+        deadlines.record(MinterLedger.Command.SignHash, 1);
+        assertEquals(0, deadlines.getResponseTimes(MinterLedger.Command.SignHash).getCount());
+    }
+
+    @Test
+    public void learnedDeadlineIsUpdatedInBatches() {
+        ReadDeadlines deadlines = new ReadDeadlines();
+        deadlines.setAdaptive(true);
+        deadlines.setAdaptiveFloor(1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < ReadDeadlines.ADAPTIVE_MIN_SAMPLES; i++) {
+            deadlines.record(MinterLedger.Command.GetVersion, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        long learned = deadlines.getDeadline(MinterLedger.Command.GetVersion);
+        assertTrue(learned < TimeUnit.MILLISECONDS.toNanos(50));
+
+        // slow responses are not seen until next update
+        for (int i = 0; i < ReadDeadlines.ADAPTIVE_UPDATE_SAMPLES - 1; i++) {
+            deadlines.record(MinterLedger.Command.GetVersion, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(learned, deadlines.getDeadline(MinterLedger.Command.GetVersion));
+
+        deadlines.record(MinterLedger.Command.GetVersion, TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(deadlines.getDeadline(MinterLedger.Command.GetVersion) >= TimeUnit.MILLISECONDS.toNanos(400));
+
+        deadlines.resetResponseTimes();
+        assertEquals(TimeUnit.SECONDS.toNanos(2), deadlines.getDeadline(MinterLedger.Command.GetVersion));
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import network.minter.core.crypto.BytesData;
+import network.minter.ledger.connector.exceptions.CanceledException;
+import network.minter.ledger.connector.exceptions.DeviceBusyException;
+import network.minter.ledger.connector.exceptions.ReadTimeoutException;
+
+import static network.minter.ledger.connector.MinterLedgerEmulatorTest.awaitLatch;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class RequestCoalescerTest {
+    private static final long AWAIT_SECONDS = 10;
+    private ExecutorService mExecutor;
+
+    private static MinterLedger.ExchangeResult ok(byte[] data) {
+        MinterLedger.ExchangeResult result = new MinterLedger.ExchangeResult(MinterLedger.Status.Ok);
+        result.data = new BytesData(data);
+        return result;
+    }
+
+    private static <T> T get(Future<T> future) throws Exception {
+        return future.get(AWAIT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void sharesInFlightExchange() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final AtomicInteger exchanges = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<MinterLedger.ExchangeResult> task = () ->
+                coalescer.execute(MinterLedger.Command.GetVersion, null, ExchangeScheduler.Priority.Normal, null, () -> {
+                    exchanges.incrementAndGet();
+                    entered.countDown();
+                    awaitLatch(release);
+                    return ok(new byte[]{1, 2, 3});
+                });
+
+        final List<Future<MinterLedger.ExchangeResult>> futures = new ArrayList<>();
+        futures.add(mExecutor.submit(task));
+        awaitLatch(entered);
+        for (int i = 0; i < 3; i++) {
+            futures.add(mExecutor.submit(task));
+        }
+        while (coalescer.getSharedCount() < 3) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        final List<MinterLedger.ExchangeResult> results = new ArrayList<>();
+        for (Future<MinterLedger.ExchangeResult> future : futures) {
+            results.add(get(future));
+        }
+
+        assertEquals(1, exchanges.get());
+        assertEquals(4, results.size());
+        assertNotSame(results.get(0).data, results.get(1).data);
+        for (MinterLedger.ExchangeResult result : results) {
+            assertArrayEquals(new byte[]{1, 2, 3}, result.data.getBytes());
+        }
+        assertEquals(4, coalescer.getRequestCount(MinterLedger.Command.GetVersion));
+        assertEquals(3, coalescer.getSharedCount(MinterLedger.Command.GetVersion));
+        assertEquals(0.75, coalescer.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void skipsNonIdempotent() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        coalescer.execute(MinterLedger.Command.SignHash, new byte[]{1}, ExchangeScheduler.Priority.Normal, null, () -> ok(new byte[]{1}));
+        coalescer.execute(MinterLedger.Command.GetAddress, new byte[]{1}, ExchangeScheduler.Priority.Normal, null, () -> ok(new byte[]{1}));
+        assertEquals(0, coalescer.getRequestCount());
+
+        coalescer.setEnabled(false);
+        coalescer.execute(MinterLedger.Command.GetVersion, null, ExchangeScheduler.Priority.Normal, null, () -> ok(new byte[]{1}));
+        assertEquals(0, coalescer.getRequestCount());
+    }
+
+    @Test
+    public void followerRunsOwnExchangeIfLeaderFailed() throws Exception {
+        assertFollowerReruns(new CanceledException());
+        assertFollowerReruns(new DeviceBusyException("Dropped"));
+        assertFollowerReruns(new ReadTimeoutException());
+    }
+
+    private void assertFollowerReruns(IOException leaderError) throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final byte[] payload = {0, 0, 0, 7};
+
+        Future<?> leader = mExecutor.submit(() -> {
+            try {
+                coalescer.execute(MinterLedger.Command.GetAddressSilent, payload, ExchangeScheduler.Priority.Normal, null, () -> {
+                    entered.countDown();
+                    awaitLatch(release);
+                    throw leaderError;
+                });
+                fail();
+            } catch (IOException e) {
+                assertSame(leaderError, e);
+            }
+            return null;
+        });
+        awaitLatch(entered);
+
+        Future<MinterLedger.ExchangeResult> follower = mExecutor.submit(() ->
+                coalescer.execute(MinterLedger.Command.GetAddressSilent, payload.clone(), ExchangeScheduler.Priority.Normal, null, () -> ok(new byte[]{7})));
+        while (coalescer.getSharedCount() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        get(leader);
+
+        assertArrayEquals(new byte[]{7}, get(follower).data.getBytes());
+    }
+
+    @Test
+    public void differentPrioritiesAreNotShared() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final byte[] payload = {0, 0, 0, 3};
+
+        Future<MinterLedger.ExchangeResult> prefetch = mExecutor.submit(() ->
+                coalescer.execute(MinterLedger.Command.GetAddressSilent, payload, ExchangeScheduler.Priority.Background, null, () -> {
+                    entered.countDown();
+                    awaitLatch(release);
+                    return ok(new byte[]{1});
+                }));
+        awaitLatch(entered);
+
+        // does not wait for background leader
+        MinterLedger.ExchangeResult result = coalescer.execute(MinterLedger.Command.GetAddressSilent, payload,
+                ExchangeScheduler.Priority.Interactive, null, () -> ok(new byte[]{2}));
+        assertArrayEquals(new byte[]{2}, result.data.getBytes());
+        assertEquals(0, coalescer.getSharedCount());
+
+        release.countDown();
+        assertArrayEquals(new byte[]{1}, get(prefetch).data.getBytes());
+    }
+
+    @Test
+    public void followerWaitIsLimitedByDeadline() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Future<MinterLedger.ExchangeResult> leader = mExecutor.submit(() ->
+                coalescer.execute(MinterLedger.Command.GetVersion, null, ExchangeScheduler.Priority.Normal, null, () -> {
+                    entered.countDown();
+                    awaitLatch(release);
+                    return ok(new byte[]{1});
+                }));
+        awaitLatch(entered);
+
+        try {
+            coalescer.execute(MinterLedger.Command.GetVersion, null, ExchangeScheduler.Priority.Normal,
+                    CancellationToken.withTimeout(20, TimeUnit.MILLISECONDS), () -> ok(new byte[]{2}));
+            fail();
+        } catch (ReadTimeoutException ignore) {
+        }
+        assertEquals(1, coalescer.getSharedCount());
+
+        release.countDown();
+        assertArrayEquals(new byte[]{1}, get(leader).data.getBytes());
+    }
+
+    @Test
+    public void followerCancelsOnlyItsWait() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Future<MinterLedger.ExchangeResult> leader = mExecutor.submit(() ->
+                coalescer.execute(MinterLedger.Command.GetVersion, null, ExchangeScheduler.Priority.Normal, null, () -> {
+                    entered.countDown();
+                    awaitLatch(release);
+                    return ok(new byte[]{1});
+                }));
+        awaitLatch(entered);
+
+        final CancellationToken token = new CancellationToken();
+        Future<?> canceler = mExecutor.submit(() -> {
+            while (coalescer.getSharedCount() < 1) {
+                Thread.yield();
+            }
+            token.cancel();
+        });
+        try {
+            coalescer.execute(MinterLedger.Command.GetVersion, null, ExchangeScheduler.Priority.Normal, token, () -> ok(new byte[]{2}));
+            fail();
+        } catch (CanceledException ignore) {
+        }
+        get(canceler);
+
+        assertFalse(leader.isDone());
+        release.countDown();
+        assertArrayEquals(new byte[]{1}, get(leader).data.getBytes());
+    }
+}
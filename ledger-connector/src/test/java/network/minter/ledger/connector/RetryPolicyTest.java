@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import network.minter.ledger.connector.exceptions.CanceledException;
+import network.minter.ledger.connector.exceptions.ConnectionException;
+import network.minter.ledger.connector.exceptions.ReadTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+    private final static MinterLedger.Command SILENT = MinterLedger.Command.GetAddressSilent;
+
+    @Test
+    public void classification() {
+        assertTrue(RetryPolicy.isRetryable(MinterLedger.Command.GetVersion));
+        assertTrue(RetryPolicy.isRetryable(SILENT));
+        assertFalse(RetryPolicy.isRetryable(MinterLedger.Command.GetAddress));
+        assertFalse(RetryPolicy.isRetryable(MinterLedger.Command.SignHash));
+
+        assertTrue(RetryPolicy.isTransient(new ReadTimeoutException()));
+        assertTrue(RetryPolicy.isTransient(new ConnectionException()));
+        assertFalse(RetryPolicy.isTransient(new CanceledException()));
+    }
+
+    @Test
+    public void retriesUntilMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.onFailure(SILENT, new ReadTimeoutException(), 1, Long.MAX_VALUE) >= 0);
+        assertTrue(policy.onFailure(SILENT, new ReadTimeoutException(), 2, Long.MAX_VALUE) >= 0);
+        assertEquals(-1, policy.onFailure(SILENT, new ReadTimeoutException(), 3, Long.MAX_VALUE));
+        policy.onSuccess(SILENT, 3);
+
+        assertEquals(2, policy.getRetryCount(SILENT));
+        assertEquals(1, policy.getExhaustedCount(SILENT));
+        assertEquals(1, policy.getRecoveredCount(SILENT));
+
+        // never repeated
+        assertEquals(-1, policy.onFailure(MinterLedger.Command.SignHash, new ReadTimeoutException(), 1, Long.MAX_VALUE));
+        assertEquals(-1, policy.onFailure(SILENT, new CanceledException(), 1, Long.MAX_VALUE));
+        policy.setEnabled(false);
+        assertEquals(-1, policy.onFailure(SILENT, new ReadTimeoutException(), 1, Long.MAX_VALUE));
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    public void budget() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setBudget(2);
+        assertTrue(policy.onFailure(SILENT, new ReadTimeoutException(), 1, Long.MAX_VALUE) >= 0);
+        assertTrue(policy.onFailure(SILENT, new ReadTimeoutException(), 1, Long.MAX_VALUE) >= 0);
+        assertEquals(-1, policy.onFailure(SILENT, new ReadTimeoutException(), 1, Long.MAX_VALUE));
+        assertEquals(0, policy.getBudget());
+
+        for (int i = 0; i < RetryPolicy.BUDGET_REFILL_CALLS; i++) {
+            policy.onSuccess(SILENT, 1);
+        }
+        assertEquals(1, policy.getBudget());
+        assertTrue(policy.onFailure(SILENT, new ReadTimeoutException(), 1, Long.MAX_VALUE) >= 0);
+
+        // backoff would end after deadline
+        policy.setBudget(10);
+        assertEquals(-1, policy.onFailure(SILENT, new ReadTimeoutException(), 1, System.nanoTime()));
+    }
+
+    @Test
+    public void jitteredBackoff() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setBackoff(10, 40, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.getBackoff(1);
+            assertTrue(first >= TimeUnit.MILLISECONDS.toNanos(5) && first <= TimeUnit.MILLISECONDS.toNanos(10));
+            long second = policy.getBackoff(2);
+            assertTrue(second >= TimeUnit.MILLISECONDS.toNanos(10) && second <= TimeUnit.MILLISECONDS.toNanos(20));
+            long capped = policy.getBackoff(10);
+            assertTrue(capped >= TimeUnit.MILLISECONDS.toNanos(20) && capped <= TimeUnit.MILLISECONDS.toNanos(40));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector.emulator;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MinterAppEmulatorTest {
+    static final String MNEMONIC = "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about";
+
+    private static String hex(byte[] data) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : data) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void keccakVectors() {
+        assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470", hex(Keccak256.digest(new byte[0])));
+        assertEquals("4e03657aea45a94fc7d47ba826c8d667c0d1e6e33a64a036ec44f58fa12d6c45", hex(Keccak256.digest("abc".getBytes())));
+        // multi-block input
+        byte[] longInput = new byte[200];
+        assertEquals(32, Keccak256.digest(longInput).length);
+    }
+
+    @Test
+    public void derivesBip44Address() {
+        MinterAppEmulator emulator = new MinterAppEmulator.Builder().setMnemonic(MNEMONIC).build();
+        // m/44'/60'/0'/0/0 of well-known test mnemonic
+        assertEquals("9858effd232b4033e47d90003d41ec34ecaeda94", hex(emulator.getAddress(0)));
+        emulator.close();
+    }
+
+    @Test
+    public void signAndVerify() {
+        HDWallet wallet = new HDWallet(HDWallet.seedFromMnemonic(MNEMONIC, ""));
+        HDWallet.Key key = wallet.getKey(3);
+        byte[] hash = Keccak256.digest("minter".getBytes());
+
+        BigInteger[] sig = Secp256k1.sign(hash, key.privateKey);
+        assertTrue(Secp256k1.verify(hash, sig[0], sig[1], key.publicKey));
+        assertTrue(sig[1].compareTo(Secp256k1.N.shiftRight(1)) <= 0);
+
+        // deterministic
+        BigInteger[] again = Secp256k1.sign(hash, key.privateKey);
+        assertEquals(sig[0], again[0]);
+        assertEquals(sig[1], again[1]);
+
+        byte[] otherHash = Keccak256.digest("other".getBytes());
+        assertFalse(Secp256k1.verify(otherHash, sig[0], sig[1], key.publicKey));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector.emulator;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * BIP32/BIP44 key tree of Minter app: m/44'/60'/0'/0/index
+ */
+final class HDWallet {
+    private final static int HARDENED = 0x80000000;
+    private final static byte[] BITCOIN_SEED = "Bitcoin seed".getBytes(Charset.forName("US-ASCII"));
+
+    private final BigInteger mAccountKey;
+    private final byte[] mAccountChainCode;
+    private final byte[] mAccountPublicKey;
+    private final ConcurrentHashMap<Integer, Key> mKeys = new ConcurrentHashMap<>();
+
+    HDWallet(byte[] seed) {
+        final byte[] master = Secp256k1.hmac("HmacSHA512", BITCOIN_SEED, seed);
+        BigInteger key = new BigInteger(1, slice(master, 0));
+        byte[] chainCode = slice(master, 32);
+
+        final int[] path = {44 | HARDENED, 60 | HARDENED, HARDENED, 0};
+        for (int index : path) {
+            final byte[] child = deriveChild(key, chainCode, index);
+            key = new BigInteger(1, slice(child, 0)).add(key).mod(Secp256k1.N);
+            chainCode = slice(child, 32);
+        }
+        mAccountKey = key;
+        mAccountChainCode = chainCode;
+        mAccountPublicKey = Secp256k1.serializeCompressed(Secp256k1.publicKey(key));
+    }
+
+    static byte[] seedFromMnemonic(String mnemonic, String passphrase) {
+        try {
+            final PBEKeySpec spec = new PBEKeySpec(mnemonic.toCharArray(), ("mnemonic" + passphrase).getBytes(Charset.forName("UTF-8")), 2048, 512);
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512").generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] slice(byte[] data, int offset) {
+        final byte[] out = new byte[32];
+        System.arraycopy(data, offset, out, 0, 32);
+        return out;
+    }
+
+    private static byte[] ser32(int index) {
+        return new byte[]{(byte) (index >>> 24), (byte) (index >>> 16), (byte) (index >>> 8), (byte) index};
+    }
+
+    private static byte[] deriveChild(BigInteger key, byte[] chainCode, int index) {
+        final byte[] data;
+        if ((index & HARDENED) != 0) {
+            data = new byte[33];
+            Secp256k1.writeUnsigned(key, data, 1);
+        } else {
+            data = Secp256k1.serializeCompressed(Secp256k1.publicKey(key));
+        }
+        return Secp256k1.hmac("HmacSHA512", chainCode, data, ser32(index));
+    }
+
+    Key getKey(int deriveIndex) {
+        Key key = mKeys.get(deriveIndex);
+        if (key == null) {
+            final byte[] child = Secp256k1.hmac("HmacSHA512", mAccountChainCode, mAccountPublicKey, ser32(deriveIndex));
+            final BigInteger priv = new BigInteger(1, slice(child, 0)).add(mAccountKey).mod(Secp256k1.N);
+            key = new Key(priv);
+            mKeys.put(deriveIndex, key);
+        }
+        return key;
+    }
+
+    static final class Key {
+        final BigInteger privateKey;
+        final BigInteger[] publicKey;
+        final byte[] address;
+
+        Key(BigInteger privateKey) {
+            this.privateKey = privateKey;
+            publicKey = Secp256k1.publicKey(privateKey);
+            final byte[] hash = Keccak256.digest(Secp256k1.serializeUncompressed(publicKey));
+            address = new byte[20];
+            System.arraycopy(hash, 12, address, 0, 20);
+        }
+    }
+}
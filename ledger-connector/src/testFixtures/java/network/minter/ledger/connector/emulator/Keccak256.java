@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector.emulator;
+
+/**
+ * Original Keccak-256 (Ethereum/Minter flavor, 0x01 padding)
+ */
+final class Keccak256 {
+    private final static int RATE = 136;
+    private final static long[] RC = {
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL, 0x8000000080008000L,
+            0x000000000000808bL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008aL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+            0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L, 0x000000000000800aL, 0x800000008000000aL,
+            0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+    private final static int[] ROTC = {
+            1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14, 27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
+    };
+    private final static int[] PILN = {
+            10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4, 15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
+    };
+
+    private Keccak256() {
+    }
+
+    static byte[] digest(byte[] data) {
+        return digest(data, 0, data.length);
+    }
+
+    static byte[] digest(byte[] data, int offset, int length) {
+        final long[] state = new long[25];
+        final int end = offset + length;
+        int pos = offset;
+        while (end - pos >= RATE) {
+            absorb(state, data, pos);
+            permute(state);
+            pos += RATE;
+        }
+
+        final byte[] last = new byte[RATE];
+        System.arraycopy(data, pos, last, 0, end - pos);
+        last[end - pos] ^= 0x01;
+        last[RATE - 1] ^= (byte) 0x80;
+        absorb(state, last, 0);
+        permute(state);
+
+        final byte[] out = new byte[32];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) (state[i >>> 3] >>> (8 * (i & 7)));
+        }
+        return out;
+    }
+
+    private static void absorb(long[] state, byte[] data, int offset) {
+        for (int i = 0; i < RATE / 8; i++) {
+            long lane = 0;
+            for (int b = 7; b >= 0; b--) {
+                lane = (lane << 8) | (data[offset + i * 8 + b] & 0xFF);
+            }
+            state[i] ^= lane;
+        }
+    }
+
+    private static void permute(long[] st) {
+        final long[] bc = new long[5];
+        for (int round = 0; round < 24; round++) {
+            // theta
+            for (int i = 0; i < 5; i++) {
+                bc[i] = st[i] ^ st[i + 5] ^ st[i + 10] ^ st[i + 15] ^ st[i + 20];
+            }
+            for (int i = 0; i < 5; i++) {
+                final long t = bc[(i + 4) % 5] ^ Long.rotateLeft(bc[(i + 1) % 5], 1);
+                for (int j = 0; j < 25; j += 5) {
+                    st[j + i] ^= t;
+                }
+            }
+
+            // rho, pi
+            long t = st[1];
+            for (int i = 0; i < 24; i++) {
+                final int j = PILN[i];
+                final long tmp = st[j];
+                st[j] = Long.rotateLeft(t, ROTC[i]);
+                t = tmp;
+            }
+
+            // chi
+            for (int j = 0; j < 25; j += 5) {
+                for (int i = 0; i < 5; i++) {
+                    bc[i] = st[j + i];
+                }
+                for (int i = 0; i < 5; i++) {
+                    st[j + i] ^= (~bc[(i + 1) % 5]) & bc[(i + 2) % 5];
+                }
+            }
+
+            // iota
+            st[0] ^= RC[round];
+        }
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector.emulator;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import network.minter.ledger.connector.HidFrameEncoder;
+import network.minter.ledger.connector.LedgerTransport;
+import network.minter.ledger.connector.exceptions.ConnectionException;
+
+/**
+ * In-process emulator of Minter Ledger app, speaking the same HID framing as Nano S.
+ * Implements GetVersion, GetAddress (silent and confirmed) and SignHash with real secp256k1 keys
+ * derived by m/44'/60'/0'/0/index, so it can be used for tests and benchmarks without hardware:
+ * <pre>
+ * MinterLedger ledger = new MinterLedger(new MinterAppEmulator.Builder().setMnemonic(words).build());
+ * </pre>
+ * Commands are processed one by one, as real device does, response is sent after
+ * latency + random jitter (+ user confirmation delay for confirmed commands).
+ */
+public class MinterAppEmulator implements LedgerTransport {
+    public final static int SW_OK = 0x9000;
+    public final static int SW_USER_REJECTED = 0x6985;
+    public final static int SW_INVALID_PARAM = 0x6b01;
+    public final static int SW_INS_NOT_SUPPORTED = 0x6d00;
+    public final static int SW_CLA_NOT_SUPPORTED = 0x6e00;
+
+    private final static int FRAME_SIZE = HidFrameEncoder.FRAME_SIZE;
+    private final static int HEADER_SIZE = HidFrameEncoder.FRAME_HEADER_SIZE;
+    private final static byte CLA = (byte) 0xe0;
+    private final static byte INS_VERSION = 0x01;
+    private final static byte INS_ADDRESS = 0x01 << 1;
+    private final static byte INS_SIGN = 0x01 << 2;
+    private final static byte[] EMPTY_FRAME = new byte[0];
+
+    private final HDWallet mWallet;
+    private final byte[] mVersion;
+    private final BlockingQueue<byte[]> mOutFrames = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService mDeviceThread;
+    private final AtomicBoolean mClosed = new AtomicBoolean(false);
+    private final AtomicLong mCommandsCount = new AtomicLong(0);
+    private final AtomicInteger mLostResponses = new AtomicInteger(0);
+    private volatile Runnable mOnCommand;
+    private volatile Runnable mOnResponse;
+    private final Random mRandom = new Random();
+    private volatile long mLatencyNanos;
+    private volatile long mJitterNanos;
+    private volatile long mConfirmationNanos;
+    private volatile boolean mUserRejects;
+
+    // request assembling state, touched only by writer
+    private byte[] mRequest;
+    private int mRequestLength = -1;
+    private int mRequestWritten;
+    private int mNextSeq;
+    private int mChannel;
+    // device answers in order: next command waits until previous one is processed
+    private final Queue<Runnable> mScheduled = new ArrayDeque<>();
+    private long mBusyUntil;
+
+    private MinterAppEmulator(Builder builder) {
+        mWallet = new HDWallet(builder.mSeed);
+        mVersion = builder.mVersion;
+        mLatencyNanos = builder.mLatencyNanos;
+        mJitterNanos = builder.mJitterNanos;
+        mConfirmationNanos = builder.mConfirmationNanos;
+        mUserRejects = builder.mUserRejects;
+        mDeviceThread = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "MinterAppEmulator");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static int readUShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    public void setLatency(long latency, TimeUnit unit) {
+        mLatencyNanos = unit.toNanos(latency);
+    }
+
+    public void setJitter(long jitter, TimeUnit unit) {
+        mJitterNanos = unit.toNanos(jitter);
+    }
+
+    public void setConfirmationDelay(long delay, TimeUnit unit) {
+        mConfirmationNanos = unit.toNanos(delay);
+    }
+
+    /**
+     * @param rejects true to emulate pressing "reject" on each confirmed command
+     */
+    public void setUserRejects(boolean rejects) {
+        mUserRejects = rejects;
+    }
+
+    /**
+     * @param hook runs right before each command is processed, null to remove. Commands with latency or confirmation
+     *             delay are processed on emulator thread, so blocking hook holds the device, like user who does not
+     *             press a button yet. Commands without delay are processed on writer thread.
+     */
+    public void setOnCommand(Runnable hook) {
+        mOnCommand = hook;
+    }
+
+    /**
+     * @param hook runs after each answer has been queued for reading, null to remove
+     */
+    public void setOnResponse(Runnable hook) {
+        mOnResponse = hook;
+    }
+
+    /**
+     * Emulates transient link failure: answers to next count commands are lost
+     */
+    public void loseResponses(int count) {
+        mLostResponses.set(count);
+    }
+
+    /**
+     * @return number of processed commands
+     */
+    public long getCommandsCount() {
+        return mCommandsCount.get();
+    }
+
+    /**
+     * @return address of given derive index, computed locally
+     */
+    public byte[] getAddress(int deriveIndex) {
+        return mWallet.getKey(deriveIndex).address.clone();
+    }
+
+    /**
+     * Checks signature produced by emulator
+     */
+    public boolean verify(int deriveIndex, byte[] hash, byte[] r, byte[] s) {
+        return Secp256k1.verify(hash, new BigInteger(1, r), new BigInteger(1, s), mWallet.getKey(deriveIndex).publicKey);
+    }
+
+    @Override
+    public int getPacketSize() {
+        return FRAME_SIZE;
+    }
+
+    @Override
+    public int read(byte[] out, int length, long timeoutMs) throws IOException {
+        if (mClosed.get()) {
+            throw new ConnectionException();
+        }
+        final byte[] frame;
+        try {
+            frame = timeoutMs == Long.MAX_VALUE ? mOutFrames.take() : mOutFrames.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        if (frame == null || frame.length == 0) {
+            return 0;
+        }
+        final int len = Math.min(length, frame.length);
+        System.arraycopy(frame, 0, out, 0, len);
+        return len;
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length, long timeoutMs) throws IOException {
+        if (mClosed.get()) {
+            throw new ConnectionException();
+        }
+        onFrame(data, offset, length);
+        return length;
+    }
+
+    @Override
+    public void cancelRead() {
+        mOutFrames.offer(EMPTY_FRAME);
+    }
+
+    @Override
+    public void close() {
+        if (mClosed.compareAndSet(false, true)) {
+            mDeviceThread.shutdownNow();
+            // wake up reader
+            mOutFrames.offer(EMPTY_FRAME);
+        }
+    }
+
+    private void onFrame(byte[] data, int offset, int length) {
+        if (length < HEADER_SIZE || data[offset + 2] != HidFrameEncoder.TAG_APDU) {
+            return;
+        }
+        final int seq = readUShort(data, offset + 3);
+        int pos = offset + HEADER_SIZE;
+        if (seq == 0) {
+            mChannel = readUShort(data, offset);
+            mRequestLength = readUShort(data, pos);
+            mRequest = new byte[mRequestLength];
+            mRequestWritten = 0;
+            mNextSeq = 0;
+            pos += 2;
+        } else if (mRequestLength < 0 || seq != mNextSeq) {
+            // garbage or lost frame, wait for new command
+            mRequestLength = -1;
+            return;
+        }
+
+        final int chunk = Math.min(offset + length - pos, mRequestLength - mRequestWritten);
+        System.arraycopy(data, pos, mRequest, mRequestWritten, chunk);
+        mRequestWritten += chunk;
+        mNextSeq++;
+
+        if (mRequestWritten == mRequestLength) {
+            final byte[] apdu = mRequest;
+            final int channel = mChannel;
+            mRequest = null;
+            mRequestLength = -1;
+            dispatch(channel, apdu);
+        }
+    }
+
+    private void dispatch(final int channel, final byte[] apdu) {
+        final boolean confirm = apdu.length >= 5 && apdu[0] == CLA
+                && (apdu[1] == INS_SIGN || (apdu[1] == INS_ADDRESS && apdu[2] == 0));
+
+        long delay = mLatencyNanos;
+        if (mJitterNanos > 0) {
+            delay += (long) (mRandom.nextDouble() * mJitterNanos);
+        }
+        if (confirm) {
+            delay += mConfirmationNanos;
+        }
+
+        synchronized (this) {
+            if (delay == 0 && mScheduled.isEmpty()) {
+                process(channel, apdu, confirm);
+                return;
+            }
+            final long now = System.nanoTime();
+            mBusyUntil = Math.max(now + delay, mBusyUntil);
+            mScheduled.add(() -> process(channel, apdu, confirm));
+            // tasks with close deadlines may swap, so each one takes the oldest command
+            mDeviceThread.schedule(() -> {
+                synchronized (this) {
+                    final Runnable next = mScheduled.poll();
+                    if (next != null) {
+                        next.run();
+                    }
+                }
+            }, mBusyUntil - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void process(int channel, byte[] apdu, boolean confirm) {
+        final Runnable onCommand = mOnCommand;
+        if (onCommand != null) {
+            onCommand.run();
+        }
+        mCommandsCount.incrementAndGet();
+        if (apdu.length < 5) {
+            respond(channel, null, SW_INVALID_PARAM);
+            return;
+        }
+        if (apdu[0] != CLA) {
+            respond(channel, null, SW_CLA_NOT_SUPPORTED);
+            return;
+        }
+        if (confirm && mUserRejects) {
+            respond(channel, null, SW_USER_REJECTED);
+            return;
+        }
+
+        final int lc = apdu[4] & 0xFF;
+        if (apdu.length < 5 + lc) {
+            respond(channel, null, SW_INVALID_PARAM);
+            return;
+        }
+
+        switch (apdu[1]) {
+            case INS_VERSION:
+                respond(channel, mVersion, SW_OK);
+                break;
+            case INS_ADDRESS:
+                if (lc != 4) {
+                    respond(channel, null, SW_INVALID_PARAM);
+                    break;
+                }
+                respond(channel, mWallet.getKey(readUShort(apdu, 5) << 16 | readUShort(apdu, 7)).address, SW_OK);
+                break;
+            case INS_SIGN:
+                if (lc != 4 + 32) {
+                    respond(channel, null, SW_INVALID_PARAM);
+                    break;
+                }
+                final HDWallet.Key key = mWallet.getKey(readUShort(apdu, 5) << 16 | readUShort(apdu, 7));
+                final byte[] hash = new byte[32];
+                System.arraycopy(apdu, 9, hash, 0, 32);
+                final BigInteger[] sig = Secp256k1.sign(hash, key.privateKey);
+                final byte[] out = new byte[65];
+                Secp256k1.writeUnsigned(sig[0], out, 0);
+                Secp256k1.writeUnsigned(sig[1], out, 32);
+                out[64] = (byte) (27 + sig[2].intValue());
+                respond(channel, out, SW_OK);
+                break;
+            default:
+                respond(channel, null, SW_INS_NOT_SUPPORTED);
+        }
+    }
+
+    private boolean takeLostResponse() {
+        int lost;
+        do {
+            lost = mLostResponses.get();
+        } while (lost > 0 && !mLostResponses.compareAndSet(lost, lost - 1));
+        return lost > 0;
+    }
+
+    private void respond(int channel, byte[] data, int status) {
+        if (takeLostResponse()) {
+            return;
+        }
+        final int dataLen = data == null ? 0 : data.length;
+        final byte[] body = new byte[2 + dataLen + 2];
+        final int len = dataLen + 2;
+        body[0] = (byte) (len >> 8);
+        body[1] = (byte) len;
+        if (data != null) {
+            System.arraycopy(data, 0, body, 2, dataLen);
+        }
+        body[body.length - 2] = (byte) (status >> 8);
+        body[body.length - 1] = (byte) status;
+
+        final int payloadSize = FRAME_SIZE - HEADER_SIZE;
+        for (int seq = 0, off = 0; off < body.length; seq++, off += payloadSize) {
+            final byte[] frame = new byte[FRAME_SIZE];
+            frame[0] = (byte) (channel >> 8);
+            frame[1] = (byte) channel;
+            frame[2] = HidFrameEncoder.TAG_APDU;
+            frame[3] = (byte) (seq >> 8);
+            frame[4] = (byte) seq;
+            System.arraycopy(body, off, frame, HEADER_SIZE, Math.min(payloadSize, body.length - off));
+            mOutFrames.offer(frame);
+        }
+        final Runnable onResponse = mOnResponse;
+        if (onResponse != null) {
+            onResponse.run();
+        }
+    }
+
+    public static final class Builder {
+        private byte[] mSeed;
+        private byte[] mVersion = new byte[]{1, 0, 0};
+        private long mLatencyNanos = 0;
+        private long mJitterNanos = 0;
+        private long mConfirmationNanos = 0;
+        private boolean mUserRejects = false;
+
+        /**
+         * @param seed BIP39 seed, 64 bytes
+         */
+        public Builder setSeed(byte[] seed) {
+            mSeed = seed.clone();
+            return this;
+        }
+
+        public Builder setMnemonic(String mnemonic) {
+            return setMnemonic(mnemonic, "");
+        }
+
+        public Builder setMnemonic(String mnemonic, String passphrase) {
+            mSeed = HDWallet.seedFromMnemonic(mnemonic, passphrase);
+            return this;
+        }
+
+        public Builder setVersion(int major, int minor, int patch) {
+            mVersion = new byte[]{(byte) major, (byte) minor, (byte) patch};
+            return this;
+        }
+
+        /**
+         * @param latency time between receiving of command and sending of response
+         */
+        public Builder setLatency(long latency, TimeUnit unit) {
+            mLatencyNanos = unit.toNanos(latency);
+            return this;
+        }
+
+        /**
+         * @param jitter max random addition to latency
+         */
+        public Builder setJitter(long jitter, TimeUnit unit) {
+            mJitterNanos = unit.toNanos(jitter);
+            return this;
+        }
+
+        /**
+         * @param delay time "user" needs to confirm GetAddress (non-silent) and SignHash
+         */
+        public Builder setConfirmationDelay(long delay, TimeUnit unit) {
+            mConfirmationNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        public Builder setUserRejects(boolean rejects) {
+            mUserRejects = rejects;
+            return this;
+        }
+
+        public MinterAppEmulator build() {
+            if (mSeed == null) {
+                throw new IllegalStateException("Seed or mnemonic is required");
+            }
+            return new MinterAppEmulator(this);
+        }
+    }
+}
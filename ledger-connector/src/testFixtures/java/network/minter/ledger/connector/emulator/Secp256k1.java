@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector.emulator;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Minimal secp256k1 arithmetic for emulator: public key derivation, RFC 6979 deterministic signing
+ * with recovery id and verification. Not constant-time, must not be used with real funds.
+ */
+final class Secp256k1 {
+    final static BigInteger P = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16);
+    final static BigInteger N = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16);
+    final static BigInteger GX = new BigInteger("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798", 16);
+    final static BigInteger GY = new BigInteger("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8", 16);
+    private final static BigInteger HALF_N = N.shiftRight(1);
+    private final static BigInteger THREE = BigInteger.valueOf(3);
+    private final static BigInteger[] G = {GX, GY, BigInteger.ONE};
+
+    private Secp256k1() {
+    }
+
+    /**
+     * @return affine point {x, y}
+     */
+    static BigInteger[] publicKey(BigInteger privateKey) {
+        return toAffine(multiply(G, privateKey));
+    }
+
+    /**
+     * @return 64 bytes: x || y
+     */
+    static byte[] serializeUncompressed(BigInteger[] point) {
+        final byte[] out = new byte[64];
+        writeUnsigned(point[0], out, 0);
+        writeUnsigned(point[1], out, 32);
+        return out;
+    }
+
+    static byte[] serializeCompressed(BigInteger[] point) {
+        final byte[] out = new byte[33];
+        out[0] = (byte) (point[1].testBit(0) ? 0x03 : 0x02);
+        writeUnsigned(point[0], out, 1);
+        return out;
+    }
+
+    /**
+     * @return {r, s, recoveryId}
+     */
+    static BigInteger[] sign(byte[] hash, BigInteger privateKey) {
+        final BigInteger z = new BigInteger(1, hash).mod(N);
+        final byte[] x = new byte[32];
+        final byte[] h1 = new byte[32];
+        writeUnsigned(privateKey, x, 0);
+        writeUnsigned(z, h1, 0);
+
+        byte[] v = new byte[32];
+        byte[] k = new byte[32];
+        Arrays.fill(v, (byte) 0x01);
+        k = hmac(k, v, new byte[]{0x00}, x, h1);
+        v = hmac(k, v);
+        k = hmac(k, v, new byte[]{0x01}, x, h1);
+        v = hmac(k, v);
+
+        while (true) {
+            v = hmac(k, v);
+            final BigInteger nonce = new BigInteger(1, v);
+            if (nonce.signum() > 0 && nonce.compareTo(N) < 0) {
+                final BigInteger[] point = toAffine(multiply(G, nonce));
+                final BigInteger r = point[0].mod(N);
+                if (r.signum() != 0) {
+                    BigInteger s = nonce.modInverse(N).multiply(z.add(r.multiply(privateKey))).mod(N);
+                    if (s.signum() != 0) {
+                        int recId = (point[1].testBit(0) ? 1 : 0) | (point[0].compareTo(N) >= 0 ? 2 : 0);
+                        if (s.compareTo(HALF_N) > 0) {
+                            s = N.subtract(s);
+                            recId ^= 1;
+                        }
+                        return new BigInteger[]{r, s, BigInteger.valueOf(recId)};
+                    }
+                }
+            }
+            k = hmac(k, v, new byte[]{0x00});
+            v = hmac(k, v);
+        }
+    }
+
+    static boolean verify(byte[] hash, BigInteger r, BigInteger s, BigInteger[] publicKey) {
+        if (r.signum() <= 0 || r.compareTo(N) >= 0 || s.signum() <= 0 || s.compareTo(N) >= 0) {
+            return false;
+        }
+        final BigInteger z = new BigInteger(1, hash).mod(N);
+        final BigInteger w = s.modInverse(N);
+        final BigInteger[] q = {publicKey[0], publicKey[1], BigInteger.ONE};
+        final BigInteger[] point = add(multiply(G, z.multiply(w).mod(N)), multiply(q, r.multiply(w).mod(N)));
+        return point != null && toAffine(point)[0].mod(N).equals(r);
+    }
+
+    static void writeUnsigned(BigInteger value, byte[] out, int offset) {
+        final byte[] raw = value.toByteArray();
+        final int len = Math.min(raw.length, 32);
+        System.arraycopy(raw, raw.length - len, out, offset + 32 - len, len);
+    }
+
+    static byte[] hmac(byte[] key, byte[]... data) {
+        return hmac("HmacSHA256", key, data);
+    }
+
+    static byte[] hmac(String algorithm, byte[] key, byte[]... data) {
+        try {
+            final Mac mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(key, algorithm));
+            for (byte[] d : data) {
+                mac.update(d);
+            }
+            return mac.doFinal();
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Jacobian coordinates {X, Y, Z}, null is the point at infinity
+
+    private static BigInteger[] multiply(BigInteger[] point, BigInteger k) {
+        BigInteger[] result = null;
+        for (int i = k.bitLength() - 1; i >= 0; i--) {
+            result = twice(result);
+            if (k.testBit(i)) {
+                result = add(result, point);
+            }
+        }
+        return result;
+    }
+
+    private static BigInteger[] twice(BigInteger[] p) {
+        if (p == null || p[1].signum() == 0) {
+            return null;
+        }
+        final BigInteger ySq = p[1].multiply(p[1]).mod(P);
+        final BigInteger s = p[0].multiply(ySq).shiftLeft(2).mod(P);
+        final BigInteger m = p[0].multiply(p[0]).multiply(THREE).mod(P);
+        final BigInteger x = m.multiply(m).subtract(s.shiftLeft(1)).mod(P);
+        final BigInteger y = m.multiply(s.subtract(x)).subtract(ySq.multiply(ySq).shiftLeft(3)).mod(P);
+        final BigInteger z = p[1].multiply(p[2]).shiftLeft(1).mod(P);
+        return new BigInteger[]{x, y, z};
+    }
+
+    private static BigInteger[] add(BigInteger[] a, BigInteger[] b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        final BigInteger z1Sq = a[2].multiply(a[2]).mod(P);
+        final BigInteger z2Sq = b[2].multiply(b[2]).mod(P);
+        final BigInteger u1 = a[0].multiply(z2Sq).mod(P);
+        final BigInteger u2 = b[0].multiply(z1Sq).mod(P);
+        final BigInteger s1 = a[1].multiply(z2Sq).multiply(b[2]).mod(P);
+        final BigInteger s2 = b[1].multiply(z1Sq).multiply(a[2]).mod(P);
+        if (u1.equals(u2)) {
+            return s1.equals(s2) ? twice(a) : null;
+        }
+        final BigInteger h = u2.subtract(u1).mod(P);
+        final BigInteger r = s2.subtract(s1).mod(P);
+        final BigInteger hSq = h.multiply(h).mod(P);
+        final BigInteger hCu = hSq.multiply(h).mod(P);
+        final BigInteger u1hSq = u1.multiply(hSq).mod(P);
+        final BigInteger x = r.multiply(r).subtract(hCu).subtract(u1hSq.shiftLeft(1)).mod(P);
+        final BigInteger y = r.multiply(u1hSq.subtract(x)).subtract(s1.multiply(hCu)).mod(P);
+        final BigInteger z = h.multiply(a[2]).multiply(b[2]).mod(P);
+        return new BigInteger[]{x, y, z};
+    }
+
+    private static BigInteger[] toAffine(BigInteger[] p) {
+        final BigInteger zInv = p[2].modInverse(P);
+        final BigInteger zInvSq = zInv.multiply(zInv).mod(P);
+        return new BigInteger[]{
+                p[0].multiply(zInvSq).mod(P),
+                p[1].multiply(zInvSq).multiply(zInv).mod(P)
+        };
+    }
+}
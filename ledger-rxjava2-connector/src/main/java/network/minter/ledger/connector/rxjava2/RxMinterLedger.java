@@ -26,61 +26,235 @@
 
 package network.minter.ledger.connector.rxjava2;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.SingleOnSubscribe;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
 import network.minter.blockchain.models.operational.SignatureSingleData;
 import network.minter.core.crypto.BytesData;
 import network.minter.core.crypto.MinterAddress;
 import network.minter.ledger.connector.APDU;
+import network.minter.ledger.connector.CancellationToken;
+import network.minter.ledger.connector.ExchangeScheduler;
 import network.minter.ledger.connector.LedgerNanoS;
 import network.minter.ledger.connector.MinterLedger;
+import network.minter.ledger.connector.RequestCoalescer;
 import network.minter.ledger.connector.exceptions.LedgerException;
 import network.minter.ledger.connector.exceptions.ResponseException;
 import timber.log.Timber;
 
 public class RxMinterLedger {
     private final static Object sSearchDispLock = new Object();
+    private final static IndexedAddress UNUSED = new IndexedAddress(-1, null);
+    public final static int DEFAULT_MAX_QUEUE_SIZE = 16;
+    private final static long SEARCH_FALLBACK_INTERVAL_SECONDS = 10;
+    private final static long DEVICE_THREAD_KEEP_ALIVE_SECONDS = 30;
     private MinterLedger mHandle;
     private Disposable mSearchDisposable;
     private AtomicBoolean mPermissionDeniedByUser = new AtomicBoolean(false);
+    private final AtomicBoolean mSearching = new AtomicBoolean(false);
+    private final BehaviorSubject<DeviceState> mDeviceState;
+    private WeakReference<Context> mContext;
+    private BroadcastReceiver mAttachReceiver;
+    private LedgerNanoS.DeviceListener mDeviceListener;
+    private long mSearchFallbackInterval = SEARCH_FALLBACK_INTERVAL_SECONDS;
+    private final ThreadPoolExecutor mDeviceExecutor;
+    private final Scheduler[] mDeviceSchedulers = new Scheduler[ExchangeScheduler.Priority.values().length];
+    private final AtomicLong mTaskSequence = new AtomicLong(0);
+    private final AtomicIntegerArray mQueued = new AtomicIntegerArray(ExchangeScheduler.Priority.values().length);
+    private volatile Thread mDeviceThread;
+    private volatile int mMaxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    private volatile Scheduler mObserveScheduler = AndroidSchedulers.mainThread();
+    private final ConcurrentHashMap<SharedKey, Single<?>> mInFlight = new ConcurrentHashMap<>();
+    private final AtomicLongArray mShared = new AtomicLongArray(MinterLedger.Command.values().length);
 
     public RxMinterLedger(Context context, UsbManager manager) {
-        mHandle = new MinterLedger(context, manager);
+        this(new MinterLedger(context, manager), context);
+    }
+
+    /**
+     * Wraps existing handle, for example one of {@link network.minter.ledger.connector.MinterLedgerPool} devices,
+     * or handle over emulator. Attach broadcasts are not tracked, so {@link #init()} is not needed for ready handles.
+     * Device listener already set on handle, like the pool one, keeps receiving events.
+     */
+    public RxMinterLedger(MinterLedger handle) {
+        this(handle, null);
+    }
+
+    private RxMinterLedger(MinterLedger handle, Context context) {
+        mHandle = handle;
+        mHandle.setDeviceListener(createDeviceListener(mHandle.getDeviceListener()));
+        mDeviceState = BehaviorSubject.createDefault(mHandle.isReady() ? DeviceState.Ready : mHandle.isConnected() ? DeviceState.Attached : DeviceState.Detached);
+
+        mDeviceExecutor = new ThreadPoolExecutor(1, 1, DEVICE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "minter-ledger-device");
+            thread.setDaemon(true);
+            mDeviceThread = thread;
+            return thread;
+        });
+        mDeviceExecutor.allowCoreThreadTimeOut(true);
+        for (ExchangeScheduler.Priority priority : ExchangeScheduler.Priority.values()) {
+            mDeviceSchedulers[priority.ordinal()] = Schedulers.from(task ->
+                    mDeviceExecutor.execute(new PrioritizedTask(priority, mTaskSequence.getAndIncrement(), task)));
+        }
+
+        mContext = new WeakReference<>(context);
+        if (context != null) {
+            mAttachReceiver = createAttachReceiver();
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+            filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+            context.registerReceiver(mAttachReceiver, filter);
+        }
+    }
+
+    /**
+     * Scheduler to deliver results on. Default is Android main thread.
+     * Set null to receive results right on the device thread: chained device calls then run one after another
+     * without thread switches, but subscriber must not block.
+     */
+    public void setObserveScheduler(@Nullable Scheduler scheduler) {
+        mObserveScheduler = scheduler;
+    }
+
+    /**
+     * @param size max device requests of one priority class waiting or running at the same time, so background
+     *             work can't fill the queue for interactive calls. Requests over limit fail
+     *             with {@link RejectedExecutionException}. Default is {@link #DEFAULT_MAX_QUEUE_SIZE}
+     */
+    public void setMaxQueueSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Queue size must be positive");
+        }
+        mMaxQueueSize = size;
+    }
+
+    /**
+     * @return device requests waiting or running
+     */
+    public int getQueueSize() {
+        int out = 0;
+        for (int i = 0; i < mQueued.length(); i++) {
+            out += mQueued.get(i);
+        }
+        return out;
+    }
+
+    public int getQueueSize(ExchangeScheduler.Priority priority) {
+        return mQueued.get(priority.ordinal());
+    }
+
+    /**
+     * @return calls, that got result of another in-flight Rx call. Not included in handle's coalescer stats,
+     * as shared calls never reach the handle
+     */
+    public long getSharedCount(MinterLedger.Command command) {
+        return mShared.get(command.ordinal());
+    }
+
+    public long getSharedCount() {
+        long out = 0;
+        for (int i = 0; i < mShared.length(); i++) {
+            out += mShared.get(i);
+        }
+        return out;
+    }
+
+    /**
+     * Runs blocking device call on the device thread, one at a time, by priority and then in subscription order,
+     * and delivers result on observe scheduler. Scans are background, signing is interactive
+     */
+    private <T> Single<T> onDevice(Single<T> call) {
+        return onDevice(call, ExchangeScheduler.Priority.Normal);
+    }
+
+    private <T> Single<T> onDevice(Single<T> call, ExchangeScheduler.Priority priority) {
+        return observe(scheduleOnDevice(call, priority));
+    }
+
+    private <T> Single<T> observe(Single<T> source) {
+        final Scheduler observeOn = mObserveScheduler;
+        return observeOn == null ? source : source.observeOn(observeOn);
     }
 
+    /**
+     * Same as {@link #onDevice(Single)}, but result stays on the device thread.
+     * If subscribed on the device thread itself (chained call), runs in place.
+     */
+    private <T> Single<T> scheduleOnDevice(Single<T> call, ExchangeScheduler.Priority priority) {
+        return Single.defer(() -> {
+            final int p = priority.ordinal();
+            if (mQueued.incrementAndGet(p) > mMaxQueueSize) {
+                mQueued.decrementAndGet(p);
+                return Single.error(new RejectedExecutionException(priority.name() + " device queue is full"));
+            }
+            final Single<T> source = Thread.currentThread() == mDeviceThread ? call : call.subscribeOn(mDeviceSchedulers[priority.ordinal()]);
+            // outside of subscribeOn, to release slot even if disposed before start
+            return source.doFinally(() -> mQueued.decrementAndGet(p));
+        });
+    }
+
+    private <T> Flowable<T> observe(Flowable<T> source) {
+        final Scheduler observeOn = mObserveScheduler;
+        // prefetch 1: default buffer would request 128 items from device at once
+        return observeOn == null ? source : source.observeOn(observeOn, false, 1);
+    }
+
+    /**
+     * Starts device search. Search is driven by USB attach broadcasts, plus slow polling as a fallback
+     * for devices, that don't deliver them. Stops when device becomes ready or user denies permission.
+     */
     public void init() {
+        mSearching.set(true);
         mHandle.search();
-        if (!isReady()) {
-            synchronized (sSearchDispLock) {
-                if (mSearchDisposable != null) {
-                    return;
-                }
+        if (isReady()) {
+            mSearching.set(false);
+            return;
+        }
+        if (mSearchFallbackInterval <= 0) {
+            return;
+        }
+
+        synchronized (sSearchDispLock) {
+            if (mSearchDisposable != null) {
+                return;
             }
-            mSearchDisposable = Observable.interval(1, TimeUnit.SECONDS)
+            mSearchDisposable = Observable.interval(mSearchFallbackInterval, TimeUnit.SECONDS)
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribeOn(Schedulers.io())
                     .subscribe(res -> {
                         if (isReady() || mPermissionDeniedByUser.get()) {
                             mPermissionDeniedByUser.set(false);
-                            synchronized (sSearchDispLock) {
-                                if (mSearchDisposable != null) {
-                                    mSearchDisposable.dispose();
-                                    mSearchDisposable = null;
-                                }
-                            }
+                            stop();
                         } else {
                             mHandle.search();
                         }
@@ -88,6 +262,50 @@ public class RxMinterLedger {
         }
     }
 
+    /**
+     * @param interval fallback search polling interval in seconds, 0 to rely on attach broadcasts only. Default is 10 seconds
+     */
+    public void setSearchFallbackInterval(long interval) {
+        mSearchFallbackInterval = interval;
+    }
+
+    /**
+     * Device presence stream. Emits current state on subscription, then every change, on the main thread.
+     * Completes on {@link #destroy()}
+     */
+    public Observable<DeviceState> observeDeviceState() {
+        return mDeviceState
+                .distinctUntilChanged()
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    private BroadcastReceiver createAttachReceiver() {
+        return new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (device == null || !LedgerNanoS.isNanoS(device)) {
+                    return;
+                }
+
+                if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction())) {
+                    Timber.d("Nano S attached: %s", device.getDeviceName());
+                    if (!isReady()) {
+                        mDeviceState.onNext(DeviceState.Attached);
+                    }
+                    if (mSearching.get()) {
+                        mHandle.search();
+                    }
+                } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(intent.getAction())) {
+                    Timber.d("Nano S detached: %s", device.getDeviceName());
+                    if (!mHandle.isConnected()) {
+                        mDeviceState.onNext(DeviceState.Detached);
+                    }
+                }
+            }
+        };
+    }
+
     public static Single<RxMinterLedger> initObserve(final RxMinterLedger dev) {
         return Single.create(emitter -> {
             dev.setDeviceListener(new LedgerNanoS.DeviceListener() {
@@ -119,6 +337,7 @@ public class RxMinterLedger {
     }
 
     public void stop() {
+        mSearching.set(false);
         synchronized (sSearchDispLock) {
             if (mSearchDisposable != null) {
                 mSearchDisposable.dispose();
@@ -131,12 +350,61 @@ public class RxMinterLedger {
         return mHandle.getDevice();
     }
 
+    /**
+     * Identical concurrent requests of idempotent commands share one exchange, see {@link RequestCoalescer}
+     */
     public Single<MinterLedger.ExchangeResult> exchange(MinterLedger.Command command, byte[] payload) {
+        return observe(coalesce(command, payload, createExchange(command, payload))
+                .map(MinterLedger.ExchangeResult::new));
+    }
+
+    /**
+     * Rx calls run one by one on the device thread, so they never overlap in handle's coalescer.
+     * Identical requests are shared here instead, before they get into device queue
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Single<T> coalesce(MinterLedger.Command command, @Nullable byte[] payload, Single<T> call) {
+        final ExchangeScheduler.Priority priority = ExchangeScheduler.defaultPriority(command);
+        if (!mHandle.getCoalescer().accepts(command)) {
+            return scheduleOnDevice(call, priority);
+        }
+
+        return Single.defer(() -> {
+            final SharedKey key = new SharedKey(command, payload, priority);
+            final boolean[] created = {false};
+            final Single<?> shared = mInFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return share(k, scheduleOnDevice(call, priority));
+            });
+            if (!created[0]) {
+                mShared.incrementAndGet(command.ordinal());
+            }
+            return (Single<T>) shared;
+        });
+    }
+
+    /**
+     * Upstream runs once for all subscribers, and is disposed when all of them are gone
+     */
+    private <T> Single<T> share(SharedKey key, Single<T> source) {
+        final AtomicReference<Single<T>> self = new AtomicReference<>();
+        final Single<T> shared = source
+                .doFinally(() -> mInFlight.remove(key, self.get()))
+                .toObservable()
+                .share()
+                .singleOrError();
+        self.set(shared);
+        return shared;
+    }
+
+    private Single<MinterLedger.ExchangeResult> createExchange(MinterLedger.Command command, byte[] payload) {
         return Single
                 .create((SingleOnSubscribe<MinterLedger.ExchangeResult>) emitter -> {
+                    final CancellationToken token = new CancellationToken();
+                    emitter.setCancellable(token::cancel);
                     MinterLedger.ExchangeResult result;
                     try {
-                        result = mHandle.exchange(command, payload);
+                        result = mHandle.exchange(command, payload, token);
                     } catch (Throwable e) {
                         emitter.tryOnError(new ResponseException(e));
                         return;
@@ -156,9 +424,7 @@ public class RxMinterLedger {
                     if (!emitter.isDisposed()) {
                         emitter.onSuccess(result);
                     }
-                })
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribeOn(Schedulers.io());
+                });
     }
 
     public Single<SignatureSingleData> signTxHash(BytesData unsignedTxHash) {
@@ -194,12 +460,121 @@ public class RxMinterLedger {
         return getAddress(deriveIndex, false);
     }
 
+    /**
+     * Resolved by handle, so silent addresses are taken from {@link MinterLedger#setAddressCache address cache}
+     * and prefetch window, when they are enabled, and derived ones are added to {@link MinterLedger#setAddressIndex address index}.
+     * Identical concurrent silent requests share one call
+     */
     public Single<MinterAddress> getAddress(int deriveIndex, boolean silent) {
-        BytesData payload = new BytesData(4);
+        final MinterLedger.Command command = silent ? MinterLedger.Command.GetAddressSilent : MinterLedger.Command.GetAddress;
+        final BytesData payload = new BytesData(4);
         payload.write(0, deriveIndex);
+        return observe(coalesce(command, payload.getBytes(), Single.create((SingleOnSubscribe<MinterAddress>) emitter -> {
+            final CancellationToken token = new CancellationToken();
+            emitter.setCancellable(token::cancel);
+            final MinterAddress result;
+            try {
+                result = mHandle.getAddress(deriveIndex, silent, token).second;
+            } catch (ResponseException e) {
+                emitter.tryOnError(e);
+                return;
+            } catch (Throwable e) {
+                emitter.tryOnError(new ResponseException(e));
+                return;
+            }
+            if (!emitter.isDisposed()) {
+                emitter.onSuccess(result);
+            }
+        })));
+    }
+
+    /**
+     * @see MinterLedger#getAddresses(int, int, boolean)
+     */
+    public Single<MinterAddress[]> getAddresses(int fromIndex, int count, boolean silent) {
+        return onDevice(Single
+                .create((SingleOnSubscribe<MinterAddress[]>) emitter -> {
+                    final CancellationToken token = new CancellationToken();
+                    emitter.setCancellable(token::cancel);
+                    MinterAddress[] result;
+                    try {
+                        result = mHandle.getAddresses(fromIndex, count, silent, token);
+                    } catch (ResponseException e) {
+                        emitter.tryOnError(e);
+                        return;
+                    } catch (Throwable e) {
+                        emitter.tryOnError(new ResponseException(e));
+                        return;
+                    }
+
+                    if (!emitter.isDisposed()) {
+                        emitter.onSuccess(result);
+                    }
+                })
+        );
+    }
+
+    /**
+     * Streams silent addresses from given index, one device request per downstream request: next address
+     * is derived only when previous one has been requested, so slow consumer doesn't queue up device work.
+     * Uses address cache of handle, if set. Infinite, stop it with take/takeWhile or dispose.
+     */
+    public Flowable<IndexedAddress> scanAddresses(int fromIndex) {
+        return observe(deriveFrom(fromIndex));
+    }
 
-        return exchange(silent ? MinterLedger.Command.GetAddressSilent : MinterLedger.Command.GetAddress, payload.getBytes())
-                .map(result -> new MinterAddress(result.data.getData()));
+    /**
+     * Account discovery: streams used silent addresses in index order, until gapLimit unused addresses in a row.
+     * Usage checks of up to maxConcurrency addresses run in parallel, while device derives the next ones.
+     * @param fromIndex first index to check
+     * @param gapLimit stop after this many consecutive unused addresses, 20 is common for wallets
+     * @param maxConcurrency max checks at the same time, also max addresses derived ahead of checks
+     * @param predicate usage check
+     */
+    public Flowable<IndexedAddress> scanAddresses(int fromIndex, int gapLimit, int maxConcurrency, AddressUsagePredicate predicate) {
+        if (gapLimit <= 0 || maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Gap limit and concurrency must be positive");
+        }
+
+        return observe(Flowable.defer(() -> {
+            final int[] gap = {0};
+            return deriveFrom(fromIndex)
+                    .concatMapEager(item -> predicate.isUsed(item)
+                                    .map(used -> used ? item : UNUSED)
+                                    .toFlowable(),
+                            maxConcurrency, 1)
+                    .takeWhile(item -> {
+                        if (item != UNUSED) {
+                            gap[0] = 0;
+                            return true;
+                        }
+                        return ++gap[0] < gapLimit;
+                    })
+                    .filter(item -> item != UNUSED);
+        }));
+    }
+
+    private Flowable<IndexedAddress> deriveFrom(int fromIndex) {
+        if (fromIndex < 0) {
+            throw new IllegalArgumentException("Index must be positive");
+        }
+        return Flowable.range(fromIndex, Integer.MAX_VALUE - fromIndex)
+                .concatMapSingle(index -> scheduleOnDevice(Single.create((SingleOnSubscribe<IndexedAddress>) emitter -> {
+                    final CancellationToken token = new CancellationToken();
+                    emitter.setCancellable(token::cancel);
+                    final IndexedAddress result;
+                    try {
+                        // same class as device thread task, so core scheduler doesn't let it ahead of foreground calls
+                        result = new IndexedAddress(index, mHandle.getAddress(index, true, ExchangeScheduler.Priority.Background, token).second);
+                    } catch (ResponseException e) {
+                        emitter.tryOnError(e);
+                        return;
+                    } catch (Throwable e) {
+                        emitter.tryOnError(new ResponseException(e));
+                        return;
+                    }
+                    emitter.onSuccess(result);
+                }), ExchangeScheduler.Priority.Background), 1);
     }
 
     public Single<String> getVersion() {
@@ -214,9 +589,21 @@ public class RxMinterLedger {
     }
 
     public void setDeviceListener(LedgerNanoS.DeviceListener listener) {
-        mHandle.setDeviceListener(new LedgerNanoS.DeviceListener() {
+        mDeviceListener = listener;
+    }
+
+    /**
+     * @param previous handle listener to forward events to, for example one of {@link network.minter.ledger.connector.MinterLedgerPool}
+     */
+    private LedgerNanoS.DeviceListener createDeviceListener(@Nullable LedgerNanoS.DeviceListener previous) {
+        return new LedgerNanoS.DeviceListener() {
             @Override
             public void onDeviceReady() {
+                mDeviceState.onNext(DeviceState.Ready);
+                if (previous != null) {
+                    previous.onDeviceReady();
+                }
+                final LedgerNanoS.DeviceListener listener = mDeviceListener;
                 if (listener != null) {
                     listener.onDeviceReady();
                 }
@@ -224,6 +611,11 @@ public class RxMinterLedger {
 
             @Override
             public void onDisconnected() {
+                mDeviceState.onNext(mHandle.isConnected() ? DeviceState.Attached : DeviceState.Detached);
+                if (previous != null) {
+                    previous.onDisconnected();
+                }
+                final LedgerNanoS.DeviceListener listener = mDeviceListener;
                 if (listener != null) {
                     listener.onDisconnected();
                     stop();
@@ -234,17 +626,29 @@ public class RxMinterLedger {
             public void onError(int code, Throwable t) {
                 if (code == MinterLedger.CODE_PERMISSION_DENIED) {
                     mPermissionDeniedByUser.set(true);
+                    mDeviceState.onNext(DeviceState.PermissionDenied);
                 }
+                if (previous != null) {
+                    previous.onError(code, t);
+                }
+                final LedgerNanoS.DeviceListener listener = mDeviceListener;
                 if (listener != null) {
                     listener.onError(code, t);
                 }
             }
-        });
+        };
     }
 
     public void destroy() {
         stop();
+        if (mContext.get() != null && mAttachReceiver != null) {
+            mContext.get().unregisterReceiver(mAttachReceiver);
+            mAttachReceiver = null;
+        }
+        mContext.clear();
+        mDeviceExecutor.shutdown();
         mHandle.destroy();
+        mDeviceState.onComplete();
         Timber.d("Destroy");
     }
 
@@ -265,4 +669,64 @@ public class RxMinterLedger {
         mHandle.disconnect();
         Timber.d("Disconnect");
     }
+
+    /**
+     * Device executor queue entry: higher priority first, FIFO inside priority
+     */
+    private final static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final ExchangeScheduler.Priority mPriority;
+        private final long mSequence;
+        private final Runnable mTask;
+
+        PrioritizedTask(ExchangeScheduler.Priority priority, long sequence, Runnable task) {
+            mPriority = priority;
+            mSequence = sequence;
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            mTask.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask o) {
+            final int byPriority = Integer.compare(mPriority.ordinal(), o.mPriority.ordinal());
+            return byPriority != 0 ? byPriority : Long.compare(mSequence, o.mSequence);
+        }
+    }
+
+    /**
+     * Identity of shared call: command, payload bytes and priority, same as handle's coalescer uses
+     */
+    private final static class SharedKey {
+        private final MinterLedger.Command mCommand;
+        private final byte[] mPayload;
+        private final ExchangeScheduler.Priority mPriority;
+        private final int mHash;
+
+        SharedKey(@NonNull MinterLedger.Command command, @Nullable byte[] payload, @NonNull ExchangeScheduler.Priority priority) {
+            mCommand = command;
+            mPayload = payload == null ? new byte[0] : payload.clone();
+            mPriority = priority;
+            mHash = 31 * (31 * command.hashCode() + priority.hashCode()) + Arrays.hashCode(mPayload);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SharedKey)) {
+                return false;
+            }
+            final SharedKey other = (SharedKey) o;
+            return mCommand == other.mCommand && mPriority == other.mPriority && Arrays.equals(mPayload, other.mPayload);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) by MinterTeam. 2019
+ * @link <a href="https://github.com/MinterTeam">Org Github</a>
+ * @link <a href="https://github.com/edwardstock">Maintainer Github</a>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package network.minter.ledger.connector.rxjava2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.android.plugins.RxAndroidPlugins;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import network.minter.core.crypto.MinterAddress;
+import network.minter.ledger.connector.LedgerNanoS;
+import network.minter.ledger.connector.MinterLedger;
+import network.minter.ledger.connector.emulator.MinterAppEmulator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RxMinterLedgerTest {
+    private static final long AWAIT_SECONDS = 10;
+    private MinterAppEmulator mEmulator;
+    private MinterLedger mHandle;
+    private RxMinterLedger mLedger;
+
+    @Before
+    public void setUp() {
+        RxAndroidPlugins.setInitMainThreadSchedulerHandler(scheduler -> Schedulers.trampoline());
+        mEmulator = new MinterAppEmulator.Builder()
+                .setVersion(1, 2, 3)
+                .build();
+        // answers come from emulator thread, so device hooks can hold them
+        mEmulator.setLatency(1, TimeUnit.MILLISECONDS);
+        mHandle = new MinterLedger(mEmulator);
+        mLedger = new RxMinterLedger(mHandle);
+        mLedger.setObserveScheduler(null);
+    }
+
+    @After
+    public void tearDown() {
+        mEmulator.setOnCommand(null);
+        mLedger.destroy();
+        RxAndroidPlugins.reset();
+    }
+
+    @Test
+    public void identicalRequestsShareExchange() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mEmulator.setOnCommand(() -> {
+            received.countDown();
+            await(release);
+        });
+
+        final TestObserver<String> first = mLedger.getVersion().test();
+        await(received);
+        final TestObserver<String> second = mLedger.getVersion().test();
+        release.countDown();
+
+        assertTrue(first.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(second.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        first.assertValue("1.2.3");
+        second.assertValue("1.2.3");
+        assertEquals(1, mEmulator.getCommandsCount());
+        assertEquals(1, mLedger.getSharedCount(MinterLedger.Command.GetVersion));
+        assertEquals(0, mHandle.getCoalescer().getSharedCount());
+    }
+
+    @Test
+    public void silentAddressesShareCall() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mEmulator.setOnCommand(() -> {
+            received.countDown();
+            await(release);
+        });
+
+        final TestObserver<MinterAddress> first = mLedger.getAddress(0, true).test();
+        await(received);
+        final TestObserver<MinterAddress> second = mLedger.getAddress(0, true).test();
+        final TestObserver<MinterAddress> other = mLedger.getAddress(1, true).test();
+        release.countDown();
+
+        assertTrue(first.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(second.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(other.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertArrayEquals(mEmulator.getAddress(0), first.values().get(0).getData());
+        assertArrayEquals(mEmulator.getAddress(0), second.values().get(0).getData());
+        assertArrayEquals(mEmulator.getAddress(1), other.values().get(0).getData());
+        assertEquals(2, mEmulator.getCommandsCount());
+        assertEquals(1, mLedger.getSharedCount(MinterLedger.Command.GetAddressSilent));
+    }
+
+    @Test
+    public void finishedRequestIsNotShared() {
+        assertEquals("1.2.3", mLedger.getVersion().blockingGet());
+        assertEquals("1.2.3", mLedger.getVersion().blockingGet());
+        assertEquals(2, mEmulator.getCommandsCount());
+        assertEquals(0, mLedger.getSharedCount());
+    }
+
+    @Test
+    public void forwardsEventsToHandleListener() {
+        final MinterAppEmulator emulator = new MinterAppEmulator.Builder().build();
+        final MinterLedger handle = new MinterLedger(emulator);
+        final AtomicInteger disconnects = new AtomicInteger(0);
+        // as pool does for its slots
+        handle.setDeviceListener(new LedgerNanoS.DeviceListener() {
+            @Override
+            public void onDeviceReady() {
+            }
+
+            @Override
+            public void onDisconnected() {
+                disconnects.incrementAndGet();
+            }
+
+            @Override
+            public void onError(int code, Throwable t) {
+            }
+        });
+        final RxMinterLedger ledger = new RxMinterLedger(handle);
+        final TestObserver<DeviceState> states = ledger.observeDeviceState().test();
+
+        handle.disconnect();
+        assertEquals(1, disconnects.get());
+        states.assertValues(DeviceState.Ready, DeviceState.Detached);
+        ledger.destroy();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(AWAIT_SECONDS, TimeUnit.SECONDS)) {
+                throw new AssertionError("Latch has not been opened in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+}